@@ -1,29 +1,56 @@
 package com.spring.batch.springbatchexample;
 
+import com.spring.batch.springbatchexample.part6.BackpressureRejectedExecutionHandler;
+import com.spring.batch.springbatchexample.part6.BatchTaskExecutors;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.task.TaskExecutor;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
-import java.util.concurrent.ThreadPoolExecutor;
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.time.Duration;
 
 @SpringBootApplication
-
+@Slf4j
 public class SpringBatchExampleApplication {
     public static void main(String[] args) {
         System.exit(SpringApplication.exit(SpringApplication.run(SpringBatchExampleApplication.class, args)));
     }
 
+    // 기본은 queue 가 제한된 platform thread pool 이다. 밀린 작업은 rejection-policy(caller-runs / block)로 제출한 쪽을 늦춘다.
     @Bean
     @Primary
-    TaskExecutor taskExecutor() {
-        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
-        taskExecutor.setCorePoolSize(10);
-        taskExecutor.setMaxPoolSize(20);
-        taskExecutor.setThreadNamePrefix("batch-thread-");
-        taskExecutor.initialize();
+    @ConditionalOnProperty(name = "batch.executor.virtual-threads", havingValue = "false", matchIfMissing = true)
+    TaskExecutor taskExecutor(@Value("${batch.executor.queue-capacity:1000}") int queueCapacity,
+                              @Value("${batch.executor.rejection-policy:caller-runs}") String rejectionPolicy,
+                              @Value("${batch.executor.block-timeout:60s}") Duration blockTimeout) {
+        BackpressureRejectedExecutionHandler rejectedExecutionHandler =
+                new BackpressureRejectedExecutionHandler(BackpressureRejectedExecutionHandler.Policy.of(rejectionPolicy), blockTimeout);
+        ThreadPoolTaskExecutor taskExecutor = BatchTaskExecutors.platformThreads(queueCapacity, rejectedExecutionHandler);
+
+        Tags tags = Tags.of("executor", "batch-thread");
+        Metrics.gauge("batch.executor.active", tags, taskExecutor, ThreadPoolTaskExecutor::getActiveCount);
+        Metrics.gauge("batch.executor.queued", tags, taskExecutor, executor -> executor.getThreadPoolExecutor().getQueue().size());
+        Metrics.gauge("batch.executor.backpressure", tags, rejectedExecutionHandler, BackpressureRejectedExecutionHandler::getBackpressureCount);
+        Metrics.gauge("batch.executor.rejected", tags, rejectedExecutionHandler, BackpressureRejectedExecutionHandler::getRejectedCount);
         return taskExecutor;
     }
+
+    // batch.executor.virtual-threads=true 이면 작업마다 virtual thread 를 만들고 connection pool 크기로 동시 실행을 제한한다.
+    @Bean("taskExecutor")
+    @Primary
+    @ConditionalOnProperty(name = "batch.executor.virtual-threads", havingValue = "true")
+    TaskExecutor virtualThreadTaskExecutor(DataSource dataSource) throws SQLException {
+        int concurrencyLimit = BatchTaskExecutors.maximumPoolSize(dataSource);
+        log.info("batch task executor : virtual threads, concurrency limit {}", concurrencyLimit);
+        return BatchTaskExecutors.virtualThreads(concurrencyLimit);
+    }
 }
@@ -0,0 +1,28 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.StepExecutionListener;
+import org.springframework.core.env.Environment;
+import org.springframework.core.env.Profiles;
+
+/**
+ * id 없이 insert 해서 auto_increment 컬럼에 기대는 JDBC step 에 붙인다.
+ * pooled-id profile 에서는 id 가 sequence 로 만들어지므로, row 를 하나도 쓰기 전에 step 을 실패시킨다.
+ */
+public class AutoIncrementIdRequiredListener implements StepExecutionListener {
+    public static final String POOLED_ID_PROFILE = "pooled-id";
+
+    private final Environment environment;
+
+    public AutoIncrementIdRequiredListener(Environment environment) {
+        this.environment = environment;
+    }
+
+    @Override
+    public void beforeStep(StepExecution stepExecution) {
+        if (environment.acceptsProfiles(Profiles.of(POOLED_ID_PROFILE))) {
+            throw new IllegalStateException(stepExecution.getStepName()
+                    + " inserts rows without ids and cannot run with the " + POOLED_ID_PROFILE + " profile");
+        }
+    }
+}
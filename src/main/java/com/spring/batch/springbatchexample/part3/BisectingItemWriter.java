@@ -0,0 +1,240 @@
+package com.spring.batch.springbatchexample.part3;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.SkipListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.core.step.skip.SkipLimitExceededException;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.classify.BinaryExceptionClassifier;
+import org.springframework.retry.ExhaustedRetryException;
+import org.springframework.retry.RetryCallback;
+import org.springframework.retry.policy.SimpleRetryPolicy;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.transaction.NestedTransactionNotSupportedException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * chunk transaction 안에서 savepoint 를 잡고 chunk 를 쓰고, skip 가능한 예외로 실패하면 savepoint 로 되돌린 뒤
+ * chunk 를 반으로 나눠 다시 쓴다. 성공한 절반은 그대로 두고 실패한 절반만 다시 나누므로,
+ * fault tolerant step 의 scan 처럼 item 마다 transaction 을 만들지 않고 O(log n) 번 만에 잘못된 item 하나를 찾는다.
+ * 모든 쓰기가 chunk transaction 에 속하므로 chunk 가 rollback 되면 함께 rollback 된다.
+ * <p>
+ * retry 가능한 예외는 같은 구간을 retryLimit 번까지 다시 쓴다. 한 건까지 좁혀도 실패하면 skipLimit 안에서 건너뛰고,
+ * 건너뛴 item 은 chunk 에서 빼서 write count 에 넣지 않는다. write skip count 는 chunk 가 commit 되기 전에 반영하고
+ * rollback 되면 되돌리며, {@link SkipListener#onSkipInWrite} 는 commit 된 뒤에 부른다.
+ * 실패로 늘어난 쓰기 수는 batch.writer.bisect.rewrites 로 남긴다.
+ * <p>
+ * savepoint 를 지원하지 않는 transaction manager 면 나누지 않고 chunk 를 그대로 쓰며, 실패는 step 의 scan 이 처리한다.
+ * delegate 가 실패하면서 transaction 을 rollback-only 로 표시하는 예외(JPA flush 실패 등)는 savepoint 로 되돌려도
+ * commit 할 수 없으므로 skip 대상으로 두지 않는다.
+ */
+public class BisectingItemWriter<T> implements ItemWriter<T>, ChunkListener {
+    private static final TransactionDefinition CHUNK_TRANSACTION = new DefaultTransactionDefinition(TransactionDefinition.PROPAGATION_MANDATORY);
+
+    private final ItemWriter<T> delegate;
+    private final PlatformTransactionManager transactionManager;
+    private Runnable afterRollbackToSavepoint = () -> {
+    };
+
+    private BinaryExceptionClassifier skippable = new BinaryExceptionClassifier(false);
+    private List<Class<? extends Throwable>> retryableExceptions = List.of();
+    private BinaryExceptionClassifier retryable = new BinaryExceptionClassifier(false);
+    private int skipLimit;
+    private int retryLimit = 1;
+    private RetryTemplate retryTemplate;
+    private final List<SkipListener<?, ? super T>> skipListeners = new ArrayList<>();
+    private Counter rewrites;
+    private volatile Boolean savepointsSupported;
+
+    private final ThreadLocal<Map<T, Throwable>> skipped = ThreadLocal.withInitial(IdentityHashMap::new);
+
+    public BisectingItemWriter(ItemWriter<T> delegate, PlatformTransactionManager transactionManager) {
+        this.delegate = delegate;
+        this.transactionManager = transactionManager;
+        setName(ClassUtils.getShortName(BisectingItemWriter.class));
+        buildRetryTemplate();
+    }
+
+    public void setName(String name) {
+        this.rewrites = Metrics.counter("batch.writer.bisect.rewrites", "name", name);
+    }
+
+    // savepoint 로 되돌린 뒤 delegate 의 상태를 맞춘다. JPA 라면 되돌린 entity 가 다시 flush 되지 않도록 EntityManager 를 비운다.
+    public void setAfterRollbackToSavepoint(Runnable afterRollbackToSavepoint) {
+        this.afterRollbackToSavepoint = afterRollbackToSavepoint;
+    }
+
+    @SafeVarargs
+    public final void setSkippableExceptions(Class<? extends Throwable>... exceptions) {
+        this.skippable = new BinaryExceptionClassifier(Arrays.asList(exceptions), true);
+    }
+
+    public void setSkipLimit(int skipLimit) {
+        this.skipLimit = skipLimit;
+    }
+
+    @SafeVarargs
+    public final void setRetryableExceptions(Class<? extends Throwable>... exceptions) {
+        this.retryableExceptions = Arrays.asList(exceptions);
+        this.retryable = new BinaryExceptionClassifier(retryableExceptions, true);
+        buildRetryTemplate();
+    }
+
+    public void setRetryLimit(int retryLimit) {
+        this.retryLimit = retryLimit;
+        buildRetryTemplate();
+    }
+
+    private void buildRetryTemplate() {
+        RetryTemplate retryTemplate = new RetryTemplate();
+        retryTemplate.setRetryPolicy(new SimpleRetryPolicy(retryLimit, retryableExceptions.stream()
+                .collect(Collectors.toMap(type -> type, type -> true))));
+        this.retryTemplate = retryTemplate;
+    }
+
+    public void registerSkipListener(SkipListener<?, ? super T> skipListener) {
+        this.skipListeners.add(skipListener);
+    }
+
+    @Override
+    public void write(Chunk<? extends T> chunk) throws Exception {
+        TransactionStatus status = transactionManager.getTransaction(CHUNK_TRANSACTION);
+        Map<T, Throwable> writeSkipped = new IdentityHashMap<>();
+        try {
+            List<T> items = new ArrayList<>(chunk.getItems());
+            if (supportsSavepoints(status)) {
+                write(items, 0, items.size(), true, status, writeSkipped);
+            } else {
+                delegate.write(new Chunk<>(items));
+            }
+        } catch (Exception e) {
+            transactionManager.rollback(status);
+            throw e;
+        }
+        transactionManager.commit(status);
+
+        if (writeSkipped.isEmpty()) {
+            return;
+        }
+        for (Iterator<? extends T> iterator = chunk.iterator(); iterator.hasNext(); ) {
+            if (writeSkipped.containsKey(iterator.next())) {
+                iterator.remove();
+            }
+        }
+        // chunk transaction 에서 step execution 을 저장하기 전에 반영해야 skip 수가 chunk 와 함께 commit 된다.
+        StepContext context = StepSynchronizationManager.getContext();
+        if (context != null) {
+            StepExecution stepExecution = context.getStepExecution();
+            stepExecution.setWriteSkipCount(stepExecution.getWriteSkipCount() + writeSkipped.size());
+        }
+        skipped.get().putAll(writeSkipped);
+    }
+
+    private void write(List<T> items, int from, int to, boolean first, TransactionStatus status, Map<T, Throwable> writeSkipped) throws Exception {
+        if (!first) {
+            rewrites.increment();
+        }
+        try {
+            writeToSavepoint(items.subList(from, to), status);
+            return;
+        } catch (Exception e) {
+            if (!skippable.classify(e)) {
+                // step 의 retry 가 이미 다시 쓴 chunk 를 또 반복하지 않도록 retry 가 끝난 예외는 감싸서 던진다.
+                throw retryable.classify(e) ? new ExhaustedRetryException("Retry exhausted while writing items", e) : e;
+            }
+            if (to - from == 1) {
+                skip(items.get(from), e, writeSkipped);
+                return;
+            }
+        }
+
+        int middle = (from + to) >>> 1;
+        write(items, from, middle, false, status, writeSkipped);
+        write(items, middle, to, false, status, writeSkipped);
+    }
+
+    private void writeToSavepoint(List<T> items, TransactionStatus status) throws Exception {
+        retryTemplate.execute((RetryCallback<Void, Exception>) context -> {
+            if (context.getRetryCount() > 0) {
+                rewrites.increment();
+            }
+            Object savepoint = status.createSavepoint();
+            try {
+                delegate.write(new Chunk<>(items));
+            } catch (Exception e) {
+                status.rollbackToSavepoint(savepoint);
+                afterRollbackToSavepoint.run();
+                throw e;
+            }
+            status.releaseSavepoint(savepoint);
+            return null;
+        });
+    }
+
+    // transaction manager 에 따라 정해지므로 처음 한 번만 확인한다.
+    private boolean supportsSavepoints(TransactionStatus status) {
+        if (savepointsSupported == null) {
+            try {
+                status.releaseSavepoint(status.createSavepoint());
+                savepointsSupported = true;
+            } catch (NestedTransactionNotSupportedException e) {
+                savepointsSupported = false;
+            }
+        }
+        return savepointsSupported;
+    }
+
+    private void skip(T item, Exception e, Map<T, Throwable> writeSkipped) {
+        StepContext context = StepSynchronizationManager.getContext();
+        long skipCount = context != null ? context.getStepExecution().getSkipCount() : 0;
+        if (skipCount + writeSkipped.size() >= skipLimit) {
+            throw new SkipLimitExceededException(skipLimit, e);
+        }
+        writeSkipped.put(item, e);
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        skipped.get().clear();
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        Map<T, Throwable> chunkSkipped = skipped.get();
+        for (Map.Entry<T, Throwable> entry : chunkSkipped.entrySet()) {
+            for (SkipListener<?, ? super T> skipListener : skipListeners) {
+                skipListener.onSkipInWrite(entry.getKey(), entry.getValue());
+            }
+        }
+        chunkSkipped.clear();
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        // chunk 가 rollback 되면 건너뛴 item 도 다시 처리되므로 미리 더한 skip 수를 되돌린다.
+        Map<T, Throwable> chunkSkipped = skipped.get();
+        if (!chunkSkipped.isEmpty() && context != null) {
+            StepExecution stepExecution = context.getStepContext().getStepExecution();
+            stepExecution.setWriteSkipCount(stepExecution.getWriteSkipCount() - chunkSkipped.size());
+        }
+        chunkSkipped.clear();
+    }
+}
@@ -0,0 +1,92 @@
+package com.spring.batch.springbatchexample.part3;
+
+/**
+ * exact {@link DedupKeySet} 앞에 두는 Bloom filter.
+ * {@link #contains} 는 filter 에 없으면 exact 집합을 probe 하지 않고 처음 보는 key 로 확정하고,
+ * 있다고 나오면 exact 집합으로 한 번 더 확인한다. 대부분의 key 가 처음 보는 key 일 때 exact probe 를 줄인다.
+ * {@link #add} 는 key 를 저장해야 하므로 항상 exact 집합에 넣는다.
+ * 지운 key 의 bit 는 남지만 exact 집합이 확인하므로 결과는 틀리지 않는다.
+ */
+public class BloomFilterKeySet implements DedupKeySet {
+    private final DedupKeySet exact;
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+
+    private long definitelyNew;
+    private long falsePositives;
+
+    /**
+     * @param expectedKeys 예상 distinct key 수
+     * @param falsePositiveRate expectedKeys 만큼 넣었을 때의 오탐률
+     */
+    public BloomFilterKeySet(DedupKeySet exact, long expectedKeys, double falsePositiveRate) {
+        this.exact = exact;
+        long bitsNeeded = (long) Math.ceil(-expectedKeys * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+        this.bits = new long[(int) Math.max(1, (bitsNeeded + 63) / 64)];
+        this.bitCount = bits.length * 64L;
+        this.hashCount = (int) Math.max(1, Math.round((double) bitCount / Math.max(1, expectedKeys) * Math.log(2)));
+    }
+
+    @Override
+    public synchronized boolean add(long fingerprint) {
+        long hash = fingerprint;
+        long step = step(fingerprint);
+        for (int i = 0; i < hashCount; i++, hash += step) {
+            long index = Math.floorMod(hash, bitCount);
+            bits[(int) (index >>> 6)] |= 1L << index;
+        }
+        return exact.add(fingerprint);
+    }
+
+    @Override
+    public synchronized boolean contains(long fingerprint) {
+        long hash = fingerprint;
+        long step = step(fingerprint);
+        for (int i = 0; i < hashCount; i++, hash += step) {
+            long index = Math.floorMod(hash, bitCount);
+            if ((bits[(int) (index >>> 6)] & (1L << index)) == 0) {
+                definitelyNew++;
+                return false;
+            }
+        }
+
+        boolean contains = exact.contains(fingerprint);
+        if (!contains) {
+            falsePositives++;
+        }
+        return contains;
+    }
+
+    @Override
+    public void remove(long fingerprint) {
+        exact.remove(fingerprint);
+    }
+
+    @Override
+    public long size() {
+        return exact.size();
+    }
+
+    @Override
+    public long memoryBytes() {
+        return bits.length * (long) Long.BYTES + exact.memoryBytes();
+    }
+
+    private static long step(long fingerprint) {
+        return (fingerprint >>> 32) | 1;
+    }
+
+    @Override
+    public void close() {
+        exact.close();
+    }
+
+    public synchronized long getDefinitelyNew() {
+        return definitelyNew;
+    }
+
+    public synchronized long getFalsePositives() {
+        return falsePositives;
+    }
+}
@@ -1,26 +1,70 @@
 package com.spring.batch.springbatchexample.part3;
 
-import org.springframework.batch.item.ItemReader;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemStreamSupport;
 import org.springframework.batch.item.NonTransientResourceException;
 import org.springframework.batch.item.ParseException;
 import org.springframework.batch.item.UnexpectedInputException;
+import org.springframework.util.ClassUtils;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class CustomItemReader<T> implements ItemReader<T> {
+/**
+ * 메모리의 list 를 index 로 읽는 reader. 다음에 읽을 index 를 ExecutionContext 에 저장하고 재시작하면 그 위치부터 읽는다.
+ * threadSafe 이면 index 를 AtomicInteger 로 나눠 주므로 multi-thread step 에서도 item 이 겹치지 않는다.
+ * 이때 저장되는 index 는 다른 thread 가 읽었지만 아직 commit 하지 않은 item 까지 앞서 갈 수 있어, 재시작하면 그 item 을 건너뛸 수 있다.
+ * saveState 를 끄면 건너뛰지는 않지만 재시작할 때 처음부터 다시 처리하므로, writer 가 같은 item 을 다시 써도 되는 경우에만 끈다.
+ */
+public class CustomItemReader<T> extends ItemStreamSupport implements ItemStreamReader<T> {
+    private static final String INDEX = "index";
 
     private final List<T> items;
+    private final boolean threadSafe;
+    private final AtomicInteger sharedIndex = new AtomicInteger();
+    private int index;
+    private boolean saveState = true;
 
     public CustomItemReader(List<T> items) {
+        this(items, false);
+    }
+
+    public CustomItemReader(List<T> items, boolean threadSafe) {
         this.items = new ArrayList<>(items);
+        this.threadSafe = threadSafe;
+        setName(ClassUtils.getShortName(CustomItemReader.class));
+    }
+
+    public void setSaveState(boolean saveState) {
+        this.saveState = saveState;
     }
 
     @Override
     public T read() throws Exception, UnexpectedInputException, ParseException, NonTransientResourceException {
-        if(!items.isEmpty())
-            return items.remove(0);
+        int next = threadSafe ? sharedIndex.getAndIncrement() : index++;
+        if (next < items.size()) {
+            return items.get(next);
+        }
         return null; // null을 반환하면 chunk 반복의 끝이라는 것을 의미한다.
     }
 
+    @Override
+    public void open(ExecutionContext executionContext) {
+        int start = saveState ? executionContext.getInt(getExecutionContextKey(INDEX), 0) : 0;
+        this.index = start;
+        this.sharedIndex.set(start);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        if (saveState) {
+            executionContext.putInt(getExecutionContextKey(INDEX), Math.min(currentIndex(), items.size()));
+        }
+    }
+
+    private int currentIndex() {
+        return threadSafe ? sharedIndex.get() : index;
+    }
 }
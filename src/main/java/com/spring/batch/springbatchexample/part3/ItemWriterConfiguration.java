@@ -17,10 +17,9 @@ import org.springframework.batch.item.database.builder.JdbcBatchItemWriterBuilde
 import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
 import org.springframework.batch.item.file.FlatFileItemWriter;
 import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.transaction.PlatformTransactionManager;
 
@@ -35,12 +34,14 @@ public class ItemWriterConfiguration {
     private final PlatformTransactionManager transactionManager;
     private final DataSource dataSource;
     private final EntityManagerFactory entityManagerFactory;
+    private final Environment environment;
 
-    public ItemWriterConfiguration(JobRepository jobRepository, PlatformTransactionManager transactionManager, DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+    public ItemWriterConfiguration(JobRepository jobRepository, PlatformTransactionManager transactionManager, DataSource dataSource, EntityManagerFactory entityManagerFactory, Environment environment) {
         this.jobRepository = jobRepository;
         this.transactionManager = transactionManager;
         this.dataSource = dataSource;
         this.entityManagerFactory = entityManagerFactory;
+        this.environment = environment;
     }
 
     @Bean
@@ -77,6 +78,7 @@ public class ItemWriterConfiguration {
                 .<Person, Person>chunk(10, transactionManager)
                 .reader(itemReader())
                 .writer(jdbcBatchItemWriter())
+                .listener(new AutoIncrementIdRequiredListener(environment))
                 .build();
     }
 
@@ -102,11 +104,12 @@ public class ItemWriterConfiguration {
     }
 
     private ItemWriter<Person> csvFileItemWriter() throws Exception {
-        BeanWrapperFieldExtractor<Person> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[]{"id", "name", "age", "address"});
-        DelimitedLineAggregator<Person> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
+        // id, name, age, address 순서로 reflection 없이 한 줄을 만든다.
+        StringBuilderLineAggregator<Person> lineAggregator = new StringBuilderLineAggregator<>((person, line) -> line
+                .append(person.getId()).append(',')
+                .append(person.getName()).append(',')
+                .append(person.getAge()).append(',')
+                .append(person.getAddress()));
 
         FlatFileItemWriter<Person> itemWriter = new FlatFileItemWriterBuilder<Person>()
                 .name("csvFileItemWriter")
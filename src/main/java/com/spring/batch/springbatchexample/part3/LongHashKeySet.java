@@ -0,0 +1,253 @@
+package com.spring.batch.springbatchexample.part3;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * long fingerprint 를 open addressing(linear probing) 표에 저장하는 {@link DedupKeySet}.
+ * key 하나에 entry 객체를 만들지 않으므로 key 당 메모리는 8 / load factor byte 정도다.
+ * 표는 heap 의 long[], off-heap direct buffer, 또는 임시 파일을 mmap 한 buffer 에 둘 수 있다.
+ */
+public class LongHashKeySet implements DedupKeySet {
+
+    public enum Backing {
+        HEAP,
+        DIRECT,
+        MAPPED;
+
+        public static Backing of(String value) {
+            if (value == null || value.isBlank()) {
+                return HEAP;
+            }
+            return Backing.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private static final long EMPTY = 0L;
+    private static final double MAX_LOAD_FACTOR = 0.6;
+    private static final int DEFAULT_CAPACITY = 1 << 16;
+    // ByteBuffer 는 int 로 index 하므로 direct / mapped 표는 2GB(2^28 칸)까지만 키울 수 있다.
+    private static final int MAX_BUFFER_CAPACITY = 1 << 28;
+
+    private final Backing backing;
+    private final Path directory;
+    private Slots slots;
+    private long size;
+
+    public LongHashKeySet() {
+        this(Backing.HEAP, null);
+    }
+
+    /**
+     * @param directory MAPPED 일 때 표 파일을 만들 디렉토리
+     */
+    public LongHashKeySet(Backing backing, Path directory) {
+        this(backing, directory, DEFAULT_CAPACITY);
+    }
+
+    public LongHashKeySet(Backing backing, Path directory, int initialCapacity) {
+        this.backing = backing;
+        this.directory = directory;
+        this.slots = newSlots(Integer.highestOneBit(Math.max(initialCapacity, 16) - 1) << 1);
+    }
+
+    @Override
+    public synchronized boolean add(long fingerprint) {
+        int mask = slots.capacity() - 1;
+        for (int i = home(fingerprint, mask); ; i = (i + 1) & mask) {
+            long value = slots.get(i);
+            if (value == fingerprint) {
+                return false;
+            }
+            if (value == EMPTY) {
+                slots.set(i, fingerprint);
+                if (++size > slots.capacity() * MAX_LOAD_FACTOR) {
+                    resize();
+                }
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public synchronized boolean contains(long fingerprint) {
+        int mask = slots.capacity() - 1;
+        for (int i = home(fingerprint, mask); ; i = (i + 1) & mask) {
+            long value = slots.get(i);
+            if (value == fingerprint) {
+                return true;
+            }
+            if (value == EMPTY) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void remove(long fingerprint) {
+        int mask = slots.capacity() - 1;
+        int i = home(fingerprint, mask);
+        while (slots.get(i) != fingerprint) {
+            if (slots.get(i) == EMPTY) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        // tombstone 없이 뒤에 이어진 값들을 당겨서 probe 순서를 유지한다.
+        for (int j = (i + 1) & mask; ; j = (j + 1) & mask) {
+            long value = slots.get(j);
+            if (value == EMPTY) {
+                break;
+            }
+            int k = home(value, mask);
+            boolean reachable = i <= j ? (i < k && k <= j) : (i < k || k <= j);
+            if (!reachable) {
+                slots.set(i, value);
+                i = j;
+            }
+        }
+        slots.set(i, EMPTY);
+        size--;
+    }
+
+    @Override
+    public synchronized long size() {
+        return size;
+    }
+
+    @Override
+    public synchronized long memoryBytes() {
+        return slots.capacity() * (long) Long.BYTES;
+    }
+
+    @Override
+    public synchronized void close() {
+        slots.close();
+    }
+
+    private static int home(long fingerprint, int mask) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    private void resize() {
+        Slots old = slots;
+        Slots resized = newSlots(old.capacity() << 1);
+        int mask = resized.capacity() - 1;
+        for (int i = 0; i < old.capacity(); i++) {
+            long value = old.get(i);
+            if (value == EMPTY) {
+                continue;
+            }
+            int j = home(value, mask);
+            while (resized.get(j) != EMPTY) {
+                j = (j + 1) & mask;
+            }
+            resized.set(j, value);
+        }
+        this.slots = resized;
+        old.close();
+    }
+
+    private Slots newSlots(int capacity) {
+        if (capacity <= 0 || (backing != Backing.HEAP && capacity > MAX_BUFFER_CAPACITY)) {
+            throw new IllegalStateException("dedup key set is full : " + size + " keys, backing " + backing);
+        }
+
+        return switch (backing) {
+            case HEAP -> new HeapSlots(capacity);
+            case DIRECT -> new BufferSlots(ByteBuffer.allocateDirect(capacity * Long.BYTES), null);
+            case MAPPED -> mappedSlots(capacity);
+        };
+    }
+
+    private Slots mappedSlots(int capacity) {
+        try {
+            Files.createDirectories(directory);
+            Path file = Files.createTempFile(directory, "dedup-", ".slots");
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                    StandardOpenOption.DELETE_ON_CLOSE);
+            // 새로 늘어난 파일 영역은 0 으로 읽히므로 따로 비울 필요가 없다.
+            return new BufferSlots(channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity * (long) Long.BYTES), channel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private interface Slots {
+        long get(int index);
+
+        void set(int index, long value);
+
+        int capacity();
+
+        default void close() {
+        }
+    }
+
+    private static final class HeapSlots implements Slots {
+        private final long[] values;
+
+        private HeapSlots(int capacity) {
+            this.values = new long[capacity];
+        }
+
+        @Override
+        public long get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public void set(int index, long value) {
+            values[index] = value;
+        }
+
+        @Override
+        public int capacity() {
+            return values.length;
+        }
+    }
+
+    private static final class BufferSlots implements Slots {
+        private final LongBuffer values;
+        private final FileChannel channel;
+
+        private BufferSlots(ByteBuffer buffer, FileChannel channel) {
+            this.values = buffer.asLongBuffer();
+            this.channel = channel;
+        }
+
+        @Override
+        public long get(int index) {
+            return values.get(index);
+        }
+
+        @Override
+        public void set(int index, long value) {
+            values.put(index, value);
+        }
+
+        @Override
+        public int capacity() {
+            return values.capacity();
+        }
+
+        @Override
+        public void close() {
+            if (channel == null) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
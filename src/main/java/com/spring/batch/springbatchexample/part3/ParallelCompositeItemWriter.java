@@ -0,0 +1,118 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamWriter;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.core.task.TaskExecutor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * chunk 를 여러 writer 에 쓰는 composite writer.
+ * transactionalDelegates 는 chunk transaction 에 묶여야 하므로 호출한 thread 에서 순서대로 쓰고,
+ * 모두 성공한 뒤에 나머지 delegates(파일, audit 등 transaction 과 무관한 sink)를 taskExecutor 에서 동시에 쓴다.
+ * 따라서 transactional delegate 가 실패한 chunk 는 sink 로 나가지 않고,
+ * sink 에 걸리는 시간은 sink 시간의 합이 아니라 가장 느린 sink 의 시간이 된다.
+ * <p>
+ * sink 가 하나라도 실패하면 나머지가 끝날 때까지 기다린 뒤 첫 예외를 던져 chunk 를 실패시킨다.
+ * sink 는 rollback 되지 않으므로 sink 나 commit 이 실패해 chunk 를 다시 쓰면 같은 item 을 한 번 더 받는다.
+ * 동시에 실행되는 작업 수는 taskExecutor 로 제한한다.
+ */
+public class ParallelCompositeItemWriter<T> implements ItemStreamWriter<T> {
+    private final List<ItemWriter<? super T>> transactionalDelegates;
+    private final List<ItemWriter<? super T>> delegates;
+    private final TaskExecutor taskExecutor;
+
+    public ParallelCompositeItemWriter(List<ItemWriter<? super T>> transactionalDelegates,
+                                       List<ItemWriter<? super T>> delegates,
+                                       TaskExecutor taskExecutor) {
+        this.transactionalDelegates = List.copyOf(transactionalDelegates);
+        this.delegates = List.copyOf(delegates);
+        this.taskExecutor = taskExecutor;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void write(Chunk<? extends T> chunk) throws Exception {
+        for (ItemWriter<? super T> delegate : transactionalDelegates) {
+            ((ItemWriter<T>) delegate).write((Chunk<T>) chunk);
+        }
+
+        List<FutureTask<Void>> futures = new ArrayList<>(delegates.size());
+        for (ItemWriter<? super T> delegate : delegates) {
+            // sink 가 서로의 chunk 를 바꾸지 않도록 각자 복사본을 준다.
+            Chunk<T> copy = new Chunk<>(chunk.getItems());
+            FutureTask<Void> future = new FutureTask<>(() -> {
+                delegate.write(copy);
+                return null;
+            });
+            taskExecutor.execute(future);
+            futures.add(future);
+        }
+
+        Exception failure = null;
+        for (FutureTask<Void> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof Error error) {
+                    throw error;
+                }
+                if (failure == null) {
+                    failure = (Exception) cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw e;
+            }
+        }
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        for (ItemStream stream : streams()) {
+            stream.open(executionContext);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        for (ItemStream stream : streams()) {
+            stream.update(executionContext);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (ItemStream stream : streams()) {
+            stream.close();
+        }
+    }
+
+    private List<ItemStream> streams() {
+        List<ItemStream> streams = new ArrayList<>();
+        for (ItemWriter<? super T> delegate : transactionalDelegates) {
+            if (delegate instanceof ItemStream stream) {
+                streams.add(stream);
+            }
+        }
+        for (ItemWriter<? super T> delegate : delegates) {
+            if (delegate instanceof ItemStream stream) {
+                streams.add(stream);
+            }
+        }
+        return streams;
+    }
+}
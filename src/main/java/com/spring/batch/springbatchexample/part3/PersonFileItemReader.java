@@ -0,0 +1,289 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileParseException;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.core.io.Resource;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * "id,name,age,address" 형식의 Person CSV 를 큰 ByteBuffer 단위로 읽는 reader.
+ * <p>
+ * FlatFileItemReader + DefaultLineMapper 와 달리 줄마다 String, String[], FieldSet 을 만들지 않고
+ * buffer 의 byte 를 그대로 ',' 로 나눠 Person 으로 옮긴다. UTF-8 의 multi-byte 문자에는 ',' 와 '\n' byte 가 없으므로
+ * byte 단위로 나눠도 문자가 잘리지 않는다. 필드는 FieldSet.readString 처럼 앞뒤 공백을 제거하며, 따옴표는 지원하지 않는다.
+ * <p>
+ * 다음에 읽을 줄의 byte 위치를 ExecutionContext 에 저장하므로 재시작하면 앞 줄을 다시 읽지 않고 그 위치로 바로 이동한다.
+ * startOffset / endOffset 을 주면 [startOffset, endOffset) 구간의 줄만 읽는다. 두 값은 줄의 시작 위치여야 한다({@link PersonFilePartitioner}).
+ */
+public class PersonFileItemReader extends AbstractItemCountingItemStreamItemReader<Person> {
+    private static final String OFFSET = "offset";
+    private static final String LINE_NUMBER = "lineNumber";
+    private static final int FIELD_COUNT = 4;
+    private static final byte DELIMITER = ',';
+    private static final byte LF = '\n';
+    private static final byte CR = '\r';
+
+    private final Resource resource;
+    private int linesToSkip;
+    private int bufferSize = 1024 * 1024;
+    private Long startOffset;
+    private Long endOffset;
+
+    private ReadableByteChannel channel;
+    private ByteBuffer buffer;
+    private boolean endOfInput;
+    private int lineStart;
+    private int lineEnd;
+    private final int[] fieldStarts = new int[FIELD_COUNT];
+    private final int[] fieldEnds = new int[FIELD_COUNT];
+
+    private long offset;
+    private long lineNumber;
+    private Long restartOffset;
+    private long restartLineNumber;
+
+    public PersonFileItemReader(Resource resource) {
+        this.resource = resource;
+        setName(ClassUtils.getShortName(PersonFileItemReader.class));
+    }
+
+    public void setLinesToSkip(int linesToSkip) {
+        this.linesToSkip = linesToSkip;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    // startOffset 을 주면 linesToSkip 은 쓰지 않는다. header 는 partitioner 가 이미 건너뛴 위치를 준다.
+    public void setStartOffset(Long startOffset) {
+        this.startOffset = startOffset;
+    }
+
+    public void setEndOffset(Long endOffset) {
+        this.endOffset = endOffset;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        if (isSaveState() && executionContext.containsKey(getExecutionContextKey(OFFSET))) {
+            this.restartOffset = executionContext.getLong(getExecutionContextKey(OFFSET));
+            this.restartLineNumber = executionContext.getLong(getExecutionContextKey(LINE_NUMBER), 0L);
+        }
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        super.update(executionContext);
+        if (isSaveState()) {
+            executionContext.putLong(getExecutionContextKey(OFFSET), offset);
+            executionContext.putLong(getExecutionContextKey(LINE_NUMBER), lineNumber);
+        }
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        this.channel = resource.isFile()
+                ? FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)
+                : Channels.newChannel(resource.getInputStream());
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        buffer.flip();
+        this.endOfInput = false;
+
+        if (restartOffset != null) {
+            seek(restartOffset);
+            this.offset = restartOffset;
+            this.lineNumber = restartLineNumber;
+            return;
+        }
+
+        this.lineNumber = 0;
+        if (startOffset != null) {
+            seek(startOffset);
+            this.offset = startOffset;
+            return;
+        }
+
+        this.offset = 0;
+        for (int i = 0; i < linesToSkip && nextLine(); i++) {
+            // header 등 앞 줄은 읽기만 하고 버린다.
+        }
+    }
+
+    private void seek(long position) throws IOException {
+        if (channel instanceof FileChannel fileChannel) {
+            fileChannel.position(position);
+            return;
+        }
+
+        long remaining = position;
+        while (remaining > 0) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), remaining));
+            int read = channel.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            remaining -= read;
+        }
+        buffer.clear();
+        buffer.flip();
+    }
+
+    @Override
+    protected Person doRead() throws Exception {
+        while (nextLine()) {
+            if (lineEnd > lineStart) {
+                return mapLine();
+            }
+        }
+        return null;
+    }
+
+    // buffer 에서 다음 줄의 위치를 [lineStart, lineEnd) 로 잡는다. 줄이 buffer 경계에 걸리면 buffer 를 채우거나 키운다.
+    private boolean nextLine() throws IOException {
+        if (endOffset != null && offset >= endOffset) {
+            return false;
+        }
+        while (true) {
+            byte[] bytes = buffer.array();
+            int start = buffer.position();
+            int limit = buffer.limit();
+            for (int i = start; i < limit; i++) {
+                if (bytes[i] == LF) {
+                    setLine(start, i);
+                    buffer.position(i + 1);
+                    offset += i + 1 - start;
+                    lineNumber++;
+                    return true;
+                }
+            }
+
+            if (endOfInput) {
+                if (start == limit) {
+                    return false;
+                }
+                setLine(start, limit);
+                buffer.position(limit);
+                offset += limit - start;
+                lineNumber++;
+                return true;
+            }
+            fill();
+        }
+    }
+
+    private void fill() throws IOException {
+        buffer.compact();
+        if (!buffer.hasRemaining()) {
+            // 한 줄이 buffer 보다 길면 buffer 를 두 배로 키운다.
+            ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.flip();
+            larger.put(buffer);
+            buffer = larger;
+        }
+        if (channel.read(buffer) < 0) {
+            endOfInput = true;
+        }
+        buffer.flip();
+    }
+
+    private void setLine(int start, int end) {
+        this.lineStart = start;
+        this.lineEnd = end > start && buffer.array()[end - 1] == CR ? end - 1 : end;
+    }
+
+    private Person mapLine() {
+        byte[] bytes = buffer.array();
+        int fieldCount = 0;
+        int fieldStart = lineStart;
+        for (int i = lineStart; i <= lineEnd; i++) {
+            if (i == lineEnd || bytes[i] == DELIMITER) {
+                if (fieldCount < FIELD_COUNT) {
+                    fieldStarts[fieldCount] = fieldStart;
+                    fieldEnds[fieldCount] = i;
+                }
+                fieldCount++;
+                fieldStart = i + 1;
+            }
+        }
+        if (fieldCount != FIELD_COUNT) {
+            throw new FlatFileParseException("Incorrect number of tokens found in record: expected " + FIELD_COUNT
+                    + " actual " + fieldCount, currentLine(), (int) lineNumber);
+        }
+
+        try {
+            return new Person(parseInt(bytes, fieldStarts[0], fieldEnds[0]),
+                    decode(bytes, fieldStarts[1], fieldEnds[1]),
+                    decode(bytes, fieldStarts[2], fieldEnds[2]),
+                    decode(bytes, fieldStarts[3], fieldEnds[3]));
+        } catch (NumberFormatException e) {
+            throw new FlatFileParseException("Unparseable id : " + e.getMessage(), e, currentLine(), (int) lineNumber);
+        }
+    }
+
+    private static String decode(byte[] bytes, int start, int end) {
+        while (start < end && bytes[start] <= ' ' && bytes[start] >= 0) {
+            start++;
+        }
+        while (end > start && bytes[end - 1] <= ' ' && bytes[end - 1] >= 0) {
+            end--;
+        }
+        return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private static int parseInt(byte[] bytes, int start, int end) {
+        while (start < end && bytes[start] == ' ') {
+            start++;
+        }
+        while (end > start && bytes[end - 1] == ' ') {
+            end--;
+        }
+        boolean negative = start < end && bytes[start] == '-';
+        int i = negative ? start + 1 : start;
+        if (i == end) {
+            throw new NumberFormatException(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        }
+
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = bytes[i] - '0';
+            if (digit < 0 || digit > 9 || value > Integer.MAX_VALUE) {
+                throw new NumberFormatException(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+            }
+            value = value * 10 + digit;
+        }
+        value = negative ? -value : value;
+        if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+            throw new NumberFormatException(new String(bytes, start, end - start, StandardCharsets.UTF_8));
+        }
+        return (int) value;
+    }
+
+    private String currentLine() {
+        return new String(buffer.array(), lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    protected void jumpToItem(int itemIndex) {
+        // 재시작 위치는 item 개수가 아니라 byte offset 으로 복원한다.
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        if (channel != null) {
+            channel.close();
+        }
+        restartOffset = null;
+    }
+}
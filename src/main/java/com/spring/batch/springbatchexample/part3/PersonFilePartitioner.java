@@ -0,0 +1,108 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Person CSV 파일을 gridSize 개의 byte 구간으로 나눈다. 구간 경계는 다음 줄의 시작 위치로 맞추고,
+ * 첫 구간은 linesToSkip 만큼의 header 줄 뒤에서 시작한다.
+ * 각 partition 에는 [startOffset, endOffset) 를 넣고, {@link PersonFileItemReader} 가 그 구간만 읽는다.
+ * 파일이 아닌 resource(jar 안의 classpath 파일 등)는 위치를 옮겨 읽을 수 없으므로 partition 하나로 읽는다.
+ */
+public class PersonFilePartitioner implements Partitioner {
+    private static final byte LF = '\n';
+
+    private final Resource resource;
+    private final int linesToSkip;
+
+    public PersonFilePartitioner(Resource resource, int linesToSkip) {
+        this.resource = resource;
+        this.linesToSkip = linesToSkip;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        try {
+            long length = resource.contentLength();
+            long dataStart = headerLength();
+            Map<String, ExecutionContext> result = new LinkedHashMap<>();
+            if (!resource.isFile() || gridSize <= 1) {
+                put(result, dataStart, length);
+                return result;
+            }
+
+            try (FileChannel channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+                long size = length - dataStart;
+                long start = dataStart;
+                for (int i = 1; i <= gridSize && start < length; i++) {
+                    long end = i == gridSize ? length : nextLineStart(channel, dataStart + size * i / gridSize, length);
+                    if (end > start) {
+                        put(result, start, end);
+                        start = end;
+                    }
+                }
+            }
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void put(Map<String, ExecutionContext> result, long start, long end) {
+        ExecutionContext value = new ExecutionContext();
+        value.putLong("startOffset", start);
+        value.putLong("endOffset", end);
+        result.put("partition" + result.size(), value);
+    }
+
+    // linesToSkip 줄의 byte 길이. 파일 전체를 읽지 않고 앞 부분만 읽는다.
+    private long headerLength() throws IOException {
+        long position = 0;
+        int skipped = 0;
+        try (InputStream inputStream = new BufferedInputStream(resource.getInputStream())) {
+            int b;
+            while (skipped < linesToSkip && (b = inputStream.read()) >= 0) {
+                position++;
+                if (b == LF) {
+                    skipped++;
+                }
+            }
+        }
+        return position;
+    }
+
+    // position 이 줄 중간이면 그 줄의 끝 다음 위치를 돌려준다.
+    private static long nextLineStart(FileChannel channel, long position, long length) throws IOException {
+        if (position == 0) {
+            return 0;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(8 * 1024);
+        long current = position - 1;
+        while (current < length) {
+            buffer.clear();
+            int read = channel.read(buffer, current);
+            if (read < 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == LF) {
+                    return current + i + 1;
+                }
+            }
+            current += read;
+        }
+        return length;
+    }
+}
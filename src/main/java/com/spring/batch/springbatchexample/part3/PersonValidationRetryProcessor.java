@@ -1,12 +1,15 @@
 package com.spring.batch.springbatchexample.part3;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Metrics;
 import org.springframework.batch.item.ItemProcessor;
-import org.springframework.retry.RetryCallback;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.retry.support.RetryTemplateBuilder;
 
 public class PersonValidationRetryProcessor implements ItemProcessor<Person, Person> {
     private final RetryTemplate retryTemplate;
+    private final Counter recovered = Metrics.counter("batch.person.validation.recovered");
+    private final Counter retries = Metrics.counter("batch.person.validation.retries");
 
     public PersonValidationRetryProcessor() {
         this.retryTemplate = new RetryTemplateBuilder()
@@ -17,14 +20,23 @@ public class PersonValidationRetryProcessor implements ItemProcessor<Person, Per
 
     @Override
     public Person process(Person item) throws Exception {
+        // 이름이 있으면 RetryContext 와 listener 없이 바로 통과시키고, 없을 때만 retry / recovery 로 넘어간다.
+        if (item.isNotEmptyName()) {
+            return item;
+        }
+
         return this.retryTemplate.execute(context -> {
             //retry callback
+            if (context.getRetryCount() > 0) {
+                retries.increment();
+            }
             if(item.isNotEmptyName())
                 return item;
 
             throw new NotFoundNameException();
         }, context -> {
             //recovery callback
+            recovered.increment();
             return item.unknownName();
         });
     }
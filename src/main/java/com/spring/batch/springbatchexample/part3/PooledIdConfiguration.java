@@ -0,0 +1,19 @@
+package com.spring.batch.springbatchexample.part3;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import javax.sql.DataSource;
+
+@Configuration
+@Profile(AutoIncrementIdRequiredListener.POOLED_ID_PROFILE)
+public class PooledIdConfiguration {
+
+    // ddl-auto 가 sequence table 을 만든 뒤에 실행되도록 EntityManagerFactory 를 먼저 받는다.
+    @Bean
+    public PooledIdSequenceReseeder pooledIdSequenceReseeder(DataSource dataSource, EntityManagerFactory entityManagerFactory) {
+        return new PooledIdSequenceReseeder(dataSource);
+    }
+}
@@ -0,0 +1,48 @@
+package com.spring.batch.springbatchexample.part3;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+/**
+ * pooled-id profile 로 처음 실행하면 Hibernate 가 만든 sequence table 은 1 부터 시작하지만,
+ * users / orders / person 에는 auto_increment 로 만든 row 가 이미 있을 수 있다.
+ * 시작할 때 각 sequence 의 다음 값을 table 의 max(id) 보다 크게 올려 id 가 겹치지 않게 한다.
+ * <p>
+ * sequence 를 table 로 흉내내는 MySQL 에서만 한다. 다른 DB 는 ddl-auto 로 table 과 sequence 를 함께 만든다.
+ */
+@Slf4j
+public class PooledIdSequenceReseeder implements InitializingBean {
+    // sequence 이름 -> id table
+    private static final Map<String, String> SEQUENCES = Map.of(
+            "users_seq", "users",
+            "orders_seq", "orders",
+            "person_seq", "person");
+
+    private final DataSource dataSource;
+
+    public PooledIdSequenceReseeder(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        String databaseProductName = JdbcUtils.extractDatabaseMetaData(dataSource, "getDatabaseProductName");
+        if (!"MySQL".equals(databaseProductName)) {
+            return;
+        }
+
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        SEQUENCES.forEach((sequence, table) -> {
+            int updated = jdbcTemplate.update("update " + sequence + " set next_val = (select coalesce(max(id), 0) + 1 from " + table + ") " +
+                    "where next_val <= (select coalesce(max(id), 0) from " + table + ")");
+            if (updated > 0) {
+                log.info("{} 를 {} 의 max(id) 다음 값으로 올렸다.", sequence, table);
+            }
+        });
+    }
+}
@@ -4,6 +4,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.ExitStatus;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.SkipListener;
 import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.core.annotation.AfterJob;
 import org.springframework.batch.core.annotation.AfterStep;
@@ -41,6 +42,18 @@ public class SavePersonListener {
         }
     }
 
+    public static class SavePersonSkipListener implements SkipListener<Person, Person> {
+        @Override
+        public void onSkipInProcess(Person item, Throwable t) {
+            log.info("skip in process : {}, {}", item.getName(), t.toString());
+        }
+
+        @Override
+        public void onSkipInWrite(Person item, Throwable t) {
+            log.info("skip in write : {}, {}", item.getName(), t.toString());
+        }
+    }
+
     public static class SavePersonAnnotationStepExecutionListener{
         @BeforeStep
         public void beforeStep(StepExecution stepExecution) {
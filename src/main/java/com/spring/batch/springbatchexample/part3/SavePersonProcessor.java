@@ -1,32 +1,334 @@
 package com.spring.batch.springbatchexample.part3;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.ItemWriteListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamSupport;
+import org.springframework.util.ClassUtils;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
-public class SavePersonProcessor <T> implements ItemProcessor<T, T> {
-    private boolean allowDuplicates;
-    private Function<T, String> keyExtractor;
-    private Map<String, Object> map = new ConcurrentHashMap<>();
+/**
+ * key 가 이미 나온 item 을 걸러낸다. key 는 {@link DedupKeySet} 에 fingerprint 로만 저장하므로 item 을 붙잡아 두지 않는다.
+ * <p>
+ * 공용 keySet 에는 commit 된 chunk 에서 실제로 쓴 item 의 key 만 넣는다. step thread 마다 처리 중인 key 로 chunk 안의 중복을 거르고,
+ * writer 가 쓴 item 의 key({@link #afterWrite})만 모아 두었다가 chunk 가 commit 된 뒤({@link #afterChunk}) 공용 keySet 에 넣는다.
+ * rollback 되면 둘 다 버린다. 따라서 한 partition 의 rollback 이 다른 partition 이 걸러낸 item 을 되살리거나 놓치게 하지 않고,
+ * write 가 실패해 step 이 item 하나씩 scan 할 때도 아직 쓰지 않은 item 을 중복으로 걸러내지 않는다.
+ * 두 partition 이 같은 key 를 각자 commit 전인 chunk 에서 처리하면 둘 다 통과한다. 이 경우는 commit 뒤에 발견해
+ * batch.dedup.late.duplicates 로 센다.
+ * checkpointDirectory 를 주면 chunk 마다 쓴 item 의 key 를 step 별 log 파일에 덧붙이고, log 길이를 ExecutionContext 에 저장한다.
+ * 재시작하면 자기 log 는 commit 된 길이까지, 다른 partition 의 log 는 commit 이 끝난 길이(.committed)까지 읽어 집합을 복원한다.
+ * partition step 처럼 step 마다 thread 가 하나인 경우에 쓰며, multi-thread step 은 지원하지 않는다.
+ */
+@Slf4j
+public class SavePersonProcessor<T> extends ItemStreamSupport implements ItemProcessor<T, T>, ItemWriteListener<T>, ChunkListener {
+    private static final String LOG_LENGTH = "dedupLogLength";
+    private static final String LOG_SUFFIX = ".log";
+    private static final String COMMITTED_SUFFIX = ".committed";
+    private static final Map<String, AtomicReference<DedupKeySet>> CURRENT = new ConcurrentHashMap<>();
+
+    private final boolean allowDuplicates;
+    private final Function<T, String> keyExtractor;
+    private final DedupKeySet keySet;
+    private Path checkpointDirectory;
+    private String name;
+
+    private final ThreadLocal<StepKeys> stepKeys = ThreadLocal.withInitial(StepKeys::new);
+    private final Set<Path> loadedLogs = ConcurrentHashMap.newKeySet();
 
     public SavePersonProcessor(boolean allowDuplicates, Function<T, String> keyExtractor) {
+        this(allowDuplicates, keyExtractor, new LongHashKeySet());
+    }
+
+    public SavePersonProcessor(boolean allowDuplicates, Function<T, String> keyExtractor, DedupKeySet keySet) {
         this.allowDuplicates = allowDuplicates;
         this.keyExtractor = keyExtractor;
+        this.keySet = keySet;
+        setName(ClassUtils.getShortName(SavePersonProcessor.class));
+    }
+
+    @Override
+    public void setName(String name) {
+        super.setName(name);
+        this.name = name;
+    }
+
+    public void setCheckpointDirectory(Path checkpointDirectory) {
+        this.checkpointDirectory = checkpointDirectory;
     }
 
     @Override
     public T process(T item) throws Exception {
         if(allowDuplicates) {
             return item;
-        }else{
-            String key = keyExtractor.apply(item);
-            if(map.containsKey(key)) {
-                return null;
+        }
+
+        // 다른 step 이 commit 한 key 와 이 transaction 에서 이미 처리한 key 를 함께 본다.
+        long fingerprint = DedupKeySet.fingerprint(keyExtractor.apply(item));
+        if (keySet.contains(fingerprint) || !stepKeys.get().process(fingerprint)) {
+            return null;
+        }
+        return item;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        if (allowDuplicates) {
+            return;
+        }
+        CURRENT.computeIfAbsent(name, SavePersonProcessor::registerGauges).set(keySet);
+        if (checkpointDirectory == null) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(checkpointDirectory);
+            StepKeys keys = stepKeys.get();
+            keys.logFile = checkpointDirectory.resolve(stepName() + LOG_SUFFIX);
+            keys.log = FileChannel.open(keys.logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // commit 되지 않은 chunk 가 남긴 꼬리는 잘라낸다.
+            keys.committedLength = executionContext.getLong(getExecutionContextKey(LOG_LENGTH), 0L);
+            keys.log.truncate(keys.committedLength);
+            keys.logLength = keys.committedLength;
+            keys.writeCommitted();
+
+            load(keys.logFile, keys.committedLength);
+            loadedLogs.add(keys.logFile);
+            try (Stream<Path> files = Files.list(checkpointDirectory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    if (file.getFileName().toString().endsWith(LOG_SUFFIX) && loadedLogs.add(file)) {
+                        load(file, readCommitted(file));
+                    }
+                }
             }
-            map.put(key, item);
-            return item;
+        } catch (IOException e) {
+            throw new ItemStreamException("Could not restore dedup keys from " + checkpointDirectory, e);
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        StepKeys keys = stepKeys.get();
+        if (keys.log == null) {
+            return;
+        }
+        try {
+            keys.flush();
+        } catch (IOException e) {
+            throw new ItemStreamException("Could not write dedup keys to " + keys.logFile, e);
+        }
+        executionContext.putLong(getExecutionContextKey(LOG_LENGTH), keys.logLength);
+    }
+
+    @Override
+    public void close() {
+        StepKeys keys = stepKeys.get();
+        stepKeys.remove();
+        if (!allowDuplicates) {
+            log.info("dedup keys : {}, memory : {} bytes, {} bytes/key", keySet.size(), keySet.memoryBytes(),
+                    keySet.size() == 0 ? 0 : keySet.memoryBytes() / keySet.size());
+        }
+        if (keys.log != null) {
+            try {
+                keys.log.close();
+            } catch (IOException e) {
+                throw new ItemStreamException(e);
+            }
+        }
+    }
+
+    // writer 가 chunk 에서 뺀 item(skip 등)은 여기에 오지 않으므로 실제로 쓴 item 의 key 만 모인다.
+    @Override
+    public void afterWrite(Chunk<? extends T> items) {
+        if (allowDuplicates) {
+            return;
+        }
+        StepKeys keys = stepKeys.get();
+        for (T item : items) {
+            keys.write(DedupKeySet.fingerprint(keyExtractor.apply(item)));
+        }
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        stepKeys.get().clear();
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        StepKeys keys = stepKeys.get();
+        int lateDuplicates = 0;
+        for (int i = 0; i < keys.writtenSize; i++) {
+            if (!keySet.add(keys.written[i])) {
+                lateDuplicates++;
+            }
+        }
+        if (lateDuplicates > 0) {
+            Metrics.counter("batch.dedup.late.duplicates", "name", name).increment(lateDuplicates);
+        }
+        keys.clear();
+        if (keys.log == null) {
+            return;
+        }
+        keys.committedLength = keys.logLength;
+        try {
+            keys.writeCommitted();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        // rollback 된 item 은 다시 처리될 수 있으므로 이 chunk 의 key 는 공용 keySet 에 넣지 않고 버린다.
+        StepKeys keys = stepKeys.get();
+        keys.clear();
+        if (keys.log == null) {
+            return;
+        }
+        try {
+            keys.log.truncate(keys.committedLength);
+            keys.logLength = keys.committedLength;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // partition 마다 open 이 불리고 job 마다 새 processor 가 만들어지므로 gauge 는 이름마다 한 번만 등록한다.
+    private static AtomicReference<DedupKeySet> registerGauges(String name) {
+        AtomicReference<DedupKeySet> current = new AtomicReference<>();
+        Tags tags = Tags.of("name", name);
+        Metrics.gauge("batch.dedup.keys", tags, current, reference -> reference.get() == null ? 0 : reference.get().size());
+        Metrics.gauge("batch.dedup.bytes.per.key", tags, current, reference -> {
+            DedupKeySet set = reference.get();
+            return set == null || set.size() == 0 ? 0 : (double) set.memoryBytes() / set.size();
+        });
+        return current;
+    }
+
+    private String stepName() {
+        StepContext context = StepSynchronizationManager.getContext();
+        String stepName = context != null ? context.getStepName() : name;
+        return stepName.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private void load(Path file, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = 0;
+            long end = Math.min(length, channel.size()) / Long.BYTES * Long.BYTES;
+            while (position < end) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                position += read;
+                buffer.flip();
+                while (buffer.remaining() >= Long.BYTES) {
+                    keySet.add(buffer.getLong());
+                }
+                position -= buffer.remaining();
+            }
+        }
+    }
+
+    private static long readCommitted(Path logFile) throws IOException {
+        Path committedFile = committedFile(logFile);
+        if (!Files.exists(committedFile)) {
+            return 0;
+        }
+        return Long.parseLong(Files.readString(committedFile).trim());
+    }
+
+    private static Path committedFile(Path logFile) {
+        return logFile.resolveSibling(logFile.getFileName() + COMMITTED_SUFFIX);
+    }
+
+    // step thread 하나가 현재 chunk transaction 에서 처리한 key, 그중 writer 가 쓴 key 와 그 step 의 log 파일
+    private static final class StepKeys {
+        private final LongHashKeySet pending = new LongHashKeySet(LongHashKeySet.Backing.HEAP, null, 64);
+        private long[] processed = new long[64];
+        private int processedSize;
+        private long[] written = new long[64];
+        private int writtenSize;
+        private int flushed;
+
+        private Path logFile;
+        private FileChannel log;
+        private long logLength;
+        private long committedLength;
+
+        private boolean process(long fingerprint) {
+            if (!pending.add(fingerprint)) {
+                return false;
+            }
+            if (processedSize == processed.length) {
+                processed = Arrays.copyOf(processed, processedSize * 2);
+            }
+            processed[processedSize++] = fingerprint;
+            return true;
+        }
+
+        private void write(long fingerprint) {
+            if (writtenSize == written.length) {
+                written = Arrays.copyOf(written, writtenSize * 2);
+            }
+            written[writtenSize++] = fingerprint;
+        }
+
+        private void clear() {
+            for (int i = 0; i < processedSize; i++) {
+                pending.remove(processed[i]);
+            }
+            processedSize = 0;
+            writtenSize = 0;
+            flushed = 0;
+        }
+
+        // 아직 log 에 쓰지 않은 key 를 덧붙인다. chunk transaction 이 commit 되기 전에 호출된다.
+        private void flush() throws IOException {
+            if (flushed == writtenSize) {
+                return;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate((writtenSize - flushed) * Long.BYTES);
+            for (int i = flushed; i < writtenSize; i++) {
+                buffer.putLong(written[i]);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                logLength += log.write(buffer, logLength);
+            }
+            flushed = writtenSize;
+        }
+
+        // 다른 partition 이 재시작할 때 읽어도 되는 길이. chunk 가 commit 된 뒤에만 늘어난다.
+        private void writeCommitted() throws IOException {
+            Files.writeString(committedFile(logFile), Long.toString(committedLength));
         }
     }
 }
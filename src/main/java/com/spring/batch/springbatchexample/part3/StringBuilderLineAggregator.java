@@ -0,0 +1,30 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.springframework.batch.item.file.transform.LineAggregator;
+
+/**
+ * BeanWrapperFieldExtractor + DelimitedLineAggregator 대신 필드를 직접 StringBuilder 에 붙여 한 줄을 만든다.
+ * 필드마다 reflection 으로 getter 를 찾거나 Object[] 를 만들지 않는다.
+ * StringBuilder 를 재사용하므로 FlatFileItemWriter 처럼 한 thread 에서만 사용한다.
+ */
+public class StringBuilderLineAggregator<T> implements LineAggregator<T> {
+
+    @FunctionalInterface
+    public interface LineFormatter<T> {
+        void format(T item, StringBuilder line);
+    }
+
+    private final LineFormatter<? super T> formatter;
+    private final StringBuilder line = new StringBuilder(128);
+
+    public StringBuilderLineAggregator(LineFormatter<? super T> formatter) {
+        this.formatter = formatter;
+    }
+
+    @Override
+    public String aggregate(T item) {
+        line.setLength(0);
+        formatter.format(item, line);
+        return line.toString();
+    }
+}
@@ -1,51 +1,66 @@
 package com.spring.batch.springbatchexample.part3;
 
+import io.micrometer.common.util.StringUtils;
+import jakarta.persistence.EntityManager;
 import jakarta.persistence.EntityManagerFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
+import org.springframework.batch.core.SkipListener;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.JobBuilder;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
+import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
 import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.scope.context.JobSynchronizationManager;
 import org.springframework.batch.core.step.builder.StepBuilder;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
 import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
-import org.springframework.batch.item.file.FlatFileItemReader;
-import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
-import org.springframework.batch.item.file.mapping.DefaultLineMapper;
-import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
-import org.springframework.batch.item.support.CompositeItemWriter;
-import org.springframework.batch.item.support.builder.CompositeItemWriterBuilder;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.orm.jpa.EntityManagerFactoryUtils;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
+import java.nio.file.Path;
+import java.util.List;
 
 @Configuration
 @Slf4j
 public class TaskProcessorConfiguration {
+    // step 과 BisectingItemWriter 가 같은 skip / retry 조건을 쓴다.
+    private static final Class<NotFoundNameException> SKIPPABLE_EXCEPTION = NotFoundNameException.class;
+    private static final int SKIP_LIMIT = 3;
+    private static final Class<NullPointerException> RETRYABLE_EXCEPTION = NullPointerException.class;
+    private static final int RETRY_LIMIT = 3;
+
     private final JobRepository jobRepository;
     private final PlatformTransactionManager transactionManager;
     private final DataSource dataSource;
     private final EntityManagerFactory entityManager;
+    private final TaskExecutor taskExecutor;
 
-    public TaskProcessorConfiguration(JobRepository jobRepository, PlatformTransactionManager transactionManager, DataSource dataSource, EntityManagerFactory entityManager) {
+    public TaskProcessorConfiguration(JobRepository jobRepository, PlatformTransactionManager transactionManager, DataSource dataSource, EntityManagerFactory entityManager,
+                                      TaskExecutor taskExecutor) {
         this.jobRepository = jobRepository;
         this.transactionManager = transactionManager;
         this.dataSource = dataSource;
         this.entityManager = entityManager;
+        this.taskExecutor = taskExecutor;
     }
 
     @Bean
     public Job taskProcessorJob() throws Exception {
         return new JobBuilder("taskProcessorJob", jobRepository)
                 .incrementer(new RunIdIncrementer())
-                .start(this.taskProcessorStep(null))
+                .start(this.taskProcessorStep(null, null, null, null, null))
                 .listener(new SavePersonListener.SavePersonJobExecutionListener())
                 .listener(new SavePersonListener.SavePersonAnnotationJobExecutionListener())
                 .build();
@@ -53,22 +68,99 @@ public class TaskProcessorConfiguration {
 
     @Bean
     @JobScope
-    public Step taskProcessorStep(@Value("#{jobParameters[allow_duplicate]}") String allowDuplicate) throws Exception {
+    public Step taskProcessorStep(@Value("#{jobParameters[allow_duplicate]}") String allowDuplicate,
+                                  @Value("#{jobParameters[partitions]}") String partitions,
+                                  @Value("#{jobParameters[dedup]}") String dedup,
+                                  @Value("#{jobParameters[dedupBloomKeys]}") String dedupBloomKeys,
+                                  @Value("#{jobParameters[writeMode]}") String writeMode) throws Exception {
+        SavePersonProcessor<Person> processor = savePersonProcessor(Boolean.parseBoolean(allowDuplicate), dedup, dedupBloomKeys);
+        boolean bisect = "bisect".equalsIgnoreCase(writeMode);
+        int gridSize = StringUtils.isNotEmpty(partitions) ? Integer.parseInt(partitions) : 1;
+        if (gridSize <= 1) {
+            return personStep("taskProcessorStep", itemReader(), processor, bisect);
+        }
+
+        // 파일을 줄 경계에 맞춘 byte 구간으로 나누고, 구간마다 worker step 이 자기 offset 부터 읽고 재시작한다.
+        // 중복 제거는 전체 파일 기준이어야 하므로 processor 는 모든 worker 가 함께 쓴다. commit 전 key 는 worker 마다 따로 든다.
+        SimpleAsyncTaskExecutor partitionTaskExecutor = new SimpleAsyncTaskExecutor("taskProcessorStep-partition-");
+        partitionTaskExecutor.setConcurrencyLimit(gridSize);
+
+        TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
+        handler.setStep(personStep("taskProcessorStep.worker", personPartitionItemReader(null, null), processor, bisect));
+        handler.setTaskExecutor(partitionTaskExecutor);
+        handler.setGridSize(gridSize);
+
         return new StepBuilder("taskProcessorStep", jobRepository)
+                .partitioner("taskProcessorStep.worker", new PersonFilePartitioner(personResource(), 0))
+                .partitionHandler(handler)
+                .build();
+    }
+
+    @Bean
+    @StepScope
+    public PersonFileItemReader personPartitionItemReader(@Value("#{stepExecutionContext[startOffset]}") Long startOffset,
+                                                          @Value("#{stepExecutionContext[endOffset]}") Long endOffset) {
+        PersonFileItemReader itemReader = new PersonFileItemReader(personResource());
+        itemReader.setStartOffset(startOffset);
+        itemReader.setEndOffset(endOffset);
+        itemReader.setName("personPartitionItemReader");
+        return itemReader;
+    }
+
+    // 중복 제거 key 는 fingerprint 로만 들고, 재시작해도 이어 쓰도록 job instance 단위 디렉토리에 chunk 마다 남긴다.
+    private SavePersonProcessor<Person> savePersonProcessor(boolean allowDuplicate, String dedup, String dedupBloomKeys) {
+        Path dedupDirectory = Path.of("output", ".dedup",
+                String.valueOf(JobSynchronizationManager.getContext().getJobExecution().getJobInstance().getInstanceId()));
+
+        DedupKeySet keySet = new LongHashKeySet(LongHashKeySet.Backing.of(dedup), dedupDirectory);
+        if (StringUtils.isNotEmpty(dedupBloomKeys)) {
+            keySet = new BloomFilterKeySet(keySet, Long.parseLong(dedupBloomKeys), 0.01);
+        }
+
+        SavePersonProcessor<Person> processor = new SavePersonProcessor<>(allowDuplicate, Person::getName, keySet);
+        processor.setCheckpointDirectory(dedupDirectory);
+        processor.setName("savePersonProcessor");
+        return processor;
+    }
+
+    private Step personStep(String name, ItemReader<Person> itemReader, SavePersonProcessor<Person> processor, boolean bisect) throws Exception {
+        SavePersonListener.SavePersonSkipListener skipListener = new SavePersonListener.SavePersonSkipListener();
+        return new StepBuilder(name, jobRepository)
                 .<Person, Person>chunk(10, transactionManager)
-                .reader(itemReader())
-                .processor(new SavePersonProcessor<>(Boolean.parseBoolean(allowDuplicate), Person::getName))
-                .writer(composedItemWriter())
+                .reader(itemReader)
+                .processor(processor)
+                .writer(bisect ? bisectingItemWriter(name, skipListener) : composedItemWriter())
                 .listener(new SavePersonListener.SavePersonAnnotationStepExecutionListener())
                 .faultTolerant()
-                .skip(NotFoundNameException.class)
-                .skipLimit(3)
-                .retry(NullPointerException.class)
-                .retryLimit(3)
+                .skip(SKIPPABLE_EXCEPTION)
+                .skipLimit(SKIP_LIMIT)
+                .retry(RETRYABLE_EXCEPTION)
+                .retryLimit(RETRY_LIMIT)
+                .listener(skipListener)
                 .build();
 
     }
 
+    // write 가 실패하면 step 의 scan(item 마다 transaction) 대신 chunk transaction 안에서 savepoint 로 반씩 나눠 잘못된 item 을 찾는다.
+    // writer 가 처리하지 못한 예외만 step 으로 올라가고, writer 가 건너뛴 item 도 step 의 skip listener 에 알린다.
+    private ItemWriter<Person> bisectingItemWriter(String name, SkipListener<Person, Person> skipListener) throws Exception {
+        BisectingItemWriter<Person> itemWriter = new BisectingItemWriter<>(composedItemWriter(), transactionManager);
+        itemWriter.setName(name + "_writer");
+        itemWriter.setSkippableExceptions(SKIPPABLE_EXCEPTION);
+        itemWriter.setSkipLimit(SKIP_LIMIT);
+        itemWriter.setRetryableExceptions(RETRYABLE_EXCEPTION);
+        itemWriter.setRetryLimit(RETRY_LIMIT);
+        itemWriter.registerSkipListener(skipListener);
+        // savepoint 로 되돌린 entity 가 commit 때 다시 flush 되지 않게 한다.
+        itemWriter.setAfterRollbackToSavepoint(() -> {
+            EntityManager transactionalEntityManager = EntityManagerFactoryUtils.getTransactionalEntityManager(entityManager);
+            if (transactionalEntityManager != null) {
+                transactionalEntityManager.clear();
+            }
+        });
+        return itemWriter;
+    }
+
     private ItemWriter<Person> composedItemWriter() throws Exception {
 
         ItemWriter<Person> saveItemWriter = new JpaItemWriterBuilder<Person>()
@@ -77,12 +169,8 @@ public class TaskProcessorConfiguration {
 
         ItemWriter<Person> logItemWriter = items -> log.info("person.size : {}", items.size());
 
-        CompositeItemWriter<Person> itemWriter = new CompositeItemWriterBuilder<Person>()
-                .delegates(saveItemWriter, logItemWriter)
-                .build();
-
-        itemWriter.afterPropertiesSet();
-        return itemWriter;
+        // JPA 저장은 chunk transaction thread 에서 하고, 성공하면 transaction 과 무관한 sink 를 공용 taskExecutor 에서 동시에 실행한다.
+        return new ParallelCompositeItemWriter<>(List.of(saveItemWriter), List.of(logItemWriter), taskExecutor);
     }
 
 //    private ItemProcessor<? super Person,? extends Person> itemProcessor(@Value("") boolean allowDuplicate) {
@@ -102,28 +190,13 @@ public class TaskProcessorConfiguration {
 //    }
 
     private ItemReader<Person> itemReader() throws Exception {
-        DefaultLineMapper<Person> lineMapper = new DefaultLineMapper<>();
-        DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
-        tokenizer.setNames("id", "name", "age", "address");
-        tokenizer.setDelimiter(",");
-        lineMapper.setLineTokenizer(tokenizer);
-
-        lineMapper.setFieldSetMapper(fieldSet -> {
-            int id = fieldSet.readInt("id");
-            String name = fieldSet.readString("name");
-            String age = fieldSet.readString("age");
-            String address = fieldSet.readString("address");
-            return new Person(id, name, age, address);
-        });
-
-        FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
-                .name("personItemReader")
-                .encoding("UTF-8")
-                .resource(new ClassPathResource("test-output.csv"))
-                .lineMapper(lineMapper)
-                .build();
-
-        itemReader.afterPropertiesSet();
+        // FieldSet 없이 byte buffer 에서 바로 Person 으로 옮기고, 재시작하면 저장된 byte offset 으로 바로 이동한다.
+        PersonFileItemReader itemReader = new PersonFileItemReader(personResource());
+        itemReader.setName("personItemReader");
         return itemReader;
     }
+
+    private Resource personResource() {
+        return new ClassPathResource("test-output.csv");
+    }
 }
@@ -0,0 +1,100 @@
+package com.spring.batch.springbatchexample.part4;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 회원별 주문 금액 합계를 집계 쿼리로 구하고, 등급별 {@code UPDATE ... WHERE id IN (...)} 으로 한 번에 등급을 올린다.
+ * id 구간 (lastId, lastId + chunkSize] 단위로 커밋하며 처리한 구간의 끝 id 를 ExecutionContext 에 남겨 재시작 시 이어서 처리한다.
+ * 구간으로 범위를 먼저 좁히므로 집계 쿼리는 매번 구간 안의 회원과 주문만 읽는다.
+ */
+public class BulkLevelUpTasklet implements Tasklet {
+    private static final String LAST_ID = "bulkLevelUp.lastId";
+
+    private static final String SELECT_TOTAL_AMOUNT = "select u.id, u.grade, coalesce(sum(o.amount), 0) " +
+            "from users u left join orders o on o.user_id = u.id " +
+            "where u.id > :lastId and u.id <= :lastId + :size " +
+            "group by u.id, u.grade " +
+            "order by u.id";
+    private static final String SELECT_MAX_ID = "select coalesce(max(id), 0) from users";
+
+    private static final String UPDATE_GRADE = "update users set grade = :grade, updated_date = :updatedDate where id in (:ids)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final int chunkSize;
+    private Long maxId;
+
+    public BulkLevelUpTasklet(DataSource dataSource, int chunkSize) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
+        long lastId = executionContext.getLong(LAST_ID, 0L);
+        if (maxId == null) {
+            maxId = jdbcTemplate.getJdbcTemplate().queryForObject(SELECT_MAX_ID, Long.class);
+        }
+        if (lastId >= maxId) {
+            return RepeatStatus.FINISHED;
+        }
+
+        Map<User.Grade, List<Long>> levelUpIds = new EnumMap<>(User.Grade.class);
+        List<Long> readIds = new ArrayList<>();
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("lastId", lastId)
+                .addValue("size", chunkSize);
+
+        jdbcTemplate.query(SELECT_TOTAL_AMOUNT, parameters, resultSet -> {
+            long id = resultSet.getLong(1);
+            String grade = resultSet.getString(2);
+            long totalAmount = resultSet.getLong(3);
+            readIds.add(id);
+
+            User.Grade currentGrade = grade == null ? null : User.Grade.valueOf(grade);
+            if (User.Grade.availableLevelUp(currentGrade, totalAmount)) {
+                levelUpIds.computeIfAbsent(User.Grade.getNextLevel(totalAmount), key -> new ArrayList<>()).add(id);
+            }
+        });
+
+        LocalDateTime now = LocalDateTime.now();
+        int writeCount = 0;
+        LevelUpCounts levelUpCounts = new LevelUpCounts();
+        for (Map.Entry<User.Grade, List<Long>> entry : levelUpIds.entrySet()) {
+            jdbcTemplate.update(UPDATE_GRADE, new MapSqlParameterSource()
+                    .addValue("grade", entry.getKey().name())
+                    .addValue("updatedDate", now)
+                    .addValue("ids", entry.getValue()));
+            writeCount += entry.getValue().size();
+            levelUpCounts.add(entry.getKey(), entry.getValue().size());
+        }
+        levelUpCounts.addToStepExecution();
+
+        // chunk step 과 같은 read/filter/write 건수가 남도록 contribution 에 반영한다.
+        for (int i = 0; i < readIds.size(); i++) {
+            contribution.incrementReadCount();
+        }
+        contribution.incrementFilterCount(readIds.size() - writeCount);
+        contribution.incrementWriteCount(writeCount);
+
+        // id 사이가 비어 구간에 회원이 없어도 다음 구간으로 넘어간다.
+        long nextLastId = lastId + chunkSize;
+        executionContext.putLong(LAST_ID, nextLastId);
+
+        return nextLastId >= maxId ? RepeatStatus.FINISHED : RepeatStatus.CONTINUABLE;
+    }
+}
@@ -0,0 +1,109 @@
+package com.spring.batch.springbatchexample.part4;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SaveUserTasklet 과 같은 분포의 회원/주문을 메모리에 모아두지 않고 batchSize 단위로 만들어 JDBC batch insert 한다.
+ * 회원 batch 에서 돌려받은 id 로 주문을 한 번에 넣고, batchSize 건마다 커밋한다.
+ * <p>
+ * usersPerTier 는 SaveUserTasklet 의 SIZE 처럼 주문 금액 구간 하나의 회원 수다. 전체 회원 수는 usersPerTier x 4 이다.
+ * write count 에는 회원과 주문 row 를 모두 더한다.
+ */
+public class BulkSaveUserTasklet implements Tasklet {
+    private static final String CREATED_COUNT = "bulkSaveUser.createdCount";
+    private static final String INSERT_USER = "insert into users(username, grade) values (?, ?)";
+    private static final String INSERT_ORDER = "insert into orders(item_name, amount, created_date, user_id) values (?, ?, ?, ?)";
+    private static final int[] AMOUNTS = {1_000, 200_000, 300_000, 500_000};
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int usersPerTier;
+    private final int batchSize;
+
+    public BulkSaveUserTasklet(DataSource dataSource, int usersPerTier, int batchSize) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.usersPerTier = usersPerTier;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
+        long createdCount = executionContext.getLong(CREATED_COUNT, 0L);
+        long totalCount = (long) usersPerTier * AMOUNTS.length;
+
+        if (createdCount >= totalCount) {
+            return RepeatStatus.FINISHED;
+        }
+
+        int count = (int) Math.min(batchSize, totalCount - createdCount);
+        List<Long> userIds = insertUsers(createdCount, count);
+        int orderCount = insertOrders(createdCount, userIds);
+
+        contribution.incrementWriteCount(count + orderCount);
+        executionContext.putLong(CREATED_COUNT, createdCount + count);
+
+        return createdCount + count >= totalCount ? RepeatStatus.FINISHED : RepeatStatus.CONTINUABLE;
+    }
+
+    private List<Long> insertUsers(long offset, int count) {
+        return jdbcTemplate.execute((ConnectionCallback<List<Long>>) connection -> {
+            try (PreparedStatement preparedStatement = connection.prepareStatement(INSERT_USER, new String[]{"id"})) {
+                for (int i = 0; i < count; i++) {
+                    preparedStatement.setString(1, "test username" + sequence(offset + i));
+                    preparedStatement.setString(2, User.Grade.NORMAL.name());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+
+                List<Long> ids = new ArrayList<>(count);
+                try (ResultSet generatedKeys = preparedStatement.getGeneratedKeys()) {
+                    while (generatedKeys.next()) {
+                        ids.add(generatedKeys.getLong(1));
+                    }
+                }
+                if (ids.size() != count) {
+                    throw new IllegalStateException("Expected " + count + " generated user ids but got " + ids.size());
+                }
+                return ids;
+            }
+        });
+    }
+
+    private int insertOrders(long offset, List<Long> userIds) {
+        List<Object[]> parameters = new ArrayList<>(userIds.size());
+        for (int i = 0; i < userIds.size(); i++) {
+            long row = offset + i;
+            int tier = tier(row);
+            parameters.add(new Object[]{
+                    "item" + sequence(row),
+                    AMOUNTS[tier],
+                    LocalDate.of(2020, 11, tier + 1),
+                    userIds.get(i)
+            });
+        }
+        jdbcTemplate.batchUpdate(INSERT_ORDER, parameters);
+        return parameters.size();
+    }
+
+    // 금액 구간을 번갈아 가며 만들어 SaveUserTasklet 의 shuffle 을 대신한다.
+    private static int tier(long row) {
+        return (int) (row % AMOUNTS.length);
+    }
+
+    private static long sequence(long row) {
+        return row / AMOUNTS.length;
+    }
+}
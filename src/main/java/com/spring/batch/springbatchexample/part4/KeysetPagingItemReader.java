@@ -0,0 +1,136 @@
+package com.spring.batch.springbatchexample.part4;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import jakarta.persistence.TypedQuery;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * OFFSET 대신 {@code where id > :lastId order by id} 로 페이지를 읽는 reader.
+ * 마지막으로 읽은 id 를 ExecutionContext 에 저장하므로 재시작 시 그 다음 id 부터 읽는다.
+ * partition 의 minId / maxId 가 주어지면 그 구간만 읽는다.
+ */
+public class KeysetPagingItemReader<T> extends AbstractItemCountingItemStreamItemReader<T> {
+    private static final String LAST_ID = "lastId";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Class<T> entityClass;
+    private final Function<T, Long> idExtractor;
+
+    private int pageSize = 1000;
+    private Long minId;
+    private Long maxId;
+
+    private EntityManager entityManager;
+    private String queryString;
+    private final Deque<T> page = new ArrayDeque<>();
+    private Long lastId;
+    private Long lastFetchedId;
+    private boolean lastPage;
+
+    public KeysetPagingItemReader(EntityManagerFactory entityManagerFactory, Class<T> entityClass, Function<T, Long> idExtractor) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.entityClass = entityClass;
+        this.idExtractor = idExtractor;
+        setName(ClassUtils.getShortName(KeysetPagingItemReader.class));
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public void setMinId(Long minId) {
+        this.minId = minId;
+    }
+
+    public void setMaxId(Long maxId) {
+        this.maxId = maxId;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        if (isSaveState() && executionContext.containsKey(getExecutionContextKey(LAST_ID))) {
+            this.lastId = executionContext.getLong(getExecutionContextKey(LAST_ID));
+        }
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        super.update(executionContext);
+        if (isSaveState() && lastId != null) {
+            executionContext.putLong(getExecutionContextKey(LAST_ID), lastId);
+        }
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        String entityName = entityManagerFactory.getMetamodel().entity(entityClass).getName();
+        this.queryString = "select e from " + entityName + " e where e.id > :lastId"
+                + (maxId != null ? " and e.id <= :maxId" : "")
+                + " order by e.id";
+        this.entityManager = entityManagerFactory.createEntityManager();
+
+        if (lastId != null) {
+            this.lastFetchedId = lastId;
+        } else {
+            this.lastFetchedId = minId != null ? minId - 1 : Long.MIN_VALUE;
+        }
+        this.lastPage = false;
+    }
+
+    @Override
+    protected T doRead() throws Exception {
+        if (page.isEmpty() && !lastPage) {
+            readPage();
+        }
+
+        T item = page.poll();
+        if (item != null) {
+            lastId = idExtractor.apply(item);
+        }
+        return item;
+    }
+
+    private void readPage() {
+        TypedQuery<T> query = entityManager.createQuery(queryString, entityClass)
+                .setParameter("lastId", lastFetchedId)
+                .setMaxResults(pageSize);
+        if (maxId != null) {
+            query.setParameter("maxId", maxId);
+        }
+
+        List<T> results = query.getResultList();
+        // 읽은 entity 는 모두 detach 해서 writer 쪽에서 dirty checking 이 일어나지 않게 한다.
+        entityManager.clear();
+
+        if (results.size() < pageSize) {
+            lastPage = true;
+        }
+        if (!results.isEmpty()) {
+            lastFetchedId = idExtractor.apply(results.get(results.size() - 1));
+        }
+        page.addAll(results);
+    }
+
+    @Override
+    protected void jumpToItem(int itemIndex) {
+        // 재시작 위치는 item 개수가 아니라 lastId 로 복원한다.
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        if (entityManager != null) {
+            entityManager.close();
+        }
+        page.clear();
+        lastId = null;
+    }
+}
@@ -0,0 +1,78 @@
+package com.spring.batch.springbatchexample.part4;
+
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * writer 가 chunk 에서 올린 등급을 세어 현재 StepExecution 의 ExecutionContext 에 더한다.
+ * chunk transaction 안에서 바로 더하므로 step 이 같은 transaction 으로 ExecutionContext 를 저장할 때 함께 남는다.
+ * chunk 가 rollback 되면 더한 값을 되돌려 rollback 된 chunk 의 승급은 세지 않는다.
+ * {@link LevelUpJobExecutionListener} 는 job 의 step 들에 남은 값을 합해 승급 건수로 쓴다.
+ */
+public class LevelUpCounts {
+    private static final String KEY_PREFIX = "levelUp.";
+
+    private final Map<User.Grade, Long> counts = new EnumMap<>(User.Grade.class);
+
+    public void add(User.Grade grade) {
+        add(grade, 1);
+    }
+
+    public void add(User.Grade grade, long count) {
+        counts.merge(grade, count, Long::sum);
+    }
+
+    public void addToStepExecution() {
+        StepContext context = StepSynchronizationManager.getContext();
+        if (counts.isEmpty() || context == null) {
+            return;
+        }
+
+        ExecutionContext executionContext = context.getStepExecution().getExecutionContext();
+        Map<User.Grade, Long> chunkCounts = new EnumMap<>(counts);
+        addTo(executionContext, chunkCounts, 1);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    addTo(executionContext, chunkCounts, -1);
+                }
+            }
+        });
+    }
+
+    public static Map<User.Grade, Long> sum(JobExecution jobExecution) {
+        Map<User.Grade, Long> sum = new EnumMap<>(User.Grade.class);
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+            ExecutionContext executionContext = stepExecution.getExecutionContext();
+            for (User.Grade grade : User.Grade.values()) {
+                long count = executionContext.getLong(KEY_PREFIX + grade.name(), 0L);
+                if (count > 0) {
+                    sum.merge(grade, count, Long::sum);
+                }
+            }
+        }
+        return sum;
+    }
+
+    // multi-thread step 에서는 여러 chunk 가 같은 ExecutionContext 에 더한다.
+    private static void addTo(ExecutionContext executionContext, Map<User.Grade, Long> counts, int sign) {
+        synchronized (executionContext) {
+            counts.forEach((grade, count) -> {
+                String key = KEY_PREFIX + grade.name();
+                executionContext.putLong(key, executionContext.getLong(key, 0L) + sign * count);
+            });
+        }
+    }
+}
@@ -1,16 +1,24 @@
 package com.spring.batch.springbatchexample.part4;
 
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.JobExecution;
 import org.springframework.batch.core.JobExecutionListener;
+import org.springframework.batch.core.StepExecution;
 
 import java.time.Duration;
-import java.time.LocalDate;
-import java.util.Collection;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 @Slf4j
 public class LevelUpJobExecutionListener implements JobExecutionListener {
 
+    // gauge 는 job 이름마다 한 번만 등록하고, listener instance 가 여러 개여도 같은 값을 갱신한다.
+    private static final Map<String, AtomicLong> TOTAL_USERS = new ConcurrentHashMap<>();
+
     private final UserRepository userRepository;
 
     public LevelUpJobExecutionListener(UserRepository userRepository) {
@@ -24,13 +32,43 @@ public class LevelUpJobExecutionListener implements JobExecutionListener {
 
     @Override
     public void afterJob(JobExecution jobExecution) {
-        Collection<User> users = userRepository.findAll();
+        // 회원 수는 count 쿼리로, 승급 건수는 writer 가 StepExecution 에 남긴 값으로 구한다.
+        String jobName = jobExecution.getJobInstance().getJobName();
+        LocalDateTime startTime = jobExecution.getStartTime();
+        LocalDateTime endTime = jobExecution.getEndTime() != null ? jobExecution.getEndTime() : LocalDateTime.now();
+
+        long userCount = userRepository.count();
+        Map<User.Grade, Long> levelUpCounts = LevelUpCounts.sum(jobExecution);
 
-        long time = Duration.between(jobExecution.getStartTime(), jobExecution.getEndTime()).toMillis();
+        long time = Duration.between(startTime, endTime).toMillis();
         log.info("회원등급 배치 프로그램");
         log.info("-----------------");
-        log.info("총 데이터 처리 {}건, 처리 시간 {}millis", users.size(), time);
+        log.info("총 데이터 처리 {}건, 처리 시간 {}millis", userCount, time);
+        levelUpCounts.forEach((grade, count) -> log.info("{} 등급 승급 {}건", grade, count));
+
+        TOTAL_USERS.computeIfAbsent(jobName, name ->
+                Metrics.gauge("batch.user.total", Tags.of("job", name), new AtomicLong(), AtomicLong::get))
+                .set(userCount);
+        levelUpCounts.forEach((grade, count) ->
+                Metrics.counter("batch.user.level.up", "job", jobName, "grade", grade.name()).increment(count));
+
+        for (StepExecution stepExecution : jobExecution.getStepExecutions()) {
+            double throughput = throughput(stepExecution, endTime);
+            log.info("{} : read {}건, write {}건, {} items/s", stepExecution.getStepName(),
+                    stepExecution.getReadCount(), stepExecution.getWriteCount(), String.format("%.1f", throughput));
+            Metrics.summary("batch.step.throughput", "job", jobName, "step", stepExecution.getStepName())
+                    .record(throughput);
+        }
 
         JobExecutionListener.super.afterJob(jobExecution);
     }
+
+    private double throughput(StepExecution stepExecution, LocalDateTime jobEndTime) {
+        if (stepExecution.getStartTime() == null) {
+            return 0;
+        }
+        LocalDateTime endTime = stepExecution.getEndTime() != null ? stepExecution.getEndTime() : jobEndTime;
+        long millis = Duration.between(stepExecution.getStartTime(), endTime).toMillis();
+        return millis > 0 ? stepExecution.getReadCount() * 1000.0 / millis : 0;
+    }
 }
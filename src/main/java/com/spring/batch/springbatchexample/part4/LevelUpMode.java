@@ -0,0 +1,19 @@
+package com.spring.batch.springbatchexample.part4;
+
+import io.micrometer.common.util.StringUtils;
+
+public enum LevelUpMode {
+    ENTITY,
+    // ENTITY 와 같지만 KeysetPagingItemReader 이전의 OFFSET paging reader 로 읽는다. 비교용이다.
+    PAGING,
+    FETCH,
+    PROJECTION,
+    BULK;
+
+    public static LevelUpMode of(String value) {
+        if (StringUtils.isEmpty(value)) {
+            return ENTITY;
+        }
+        return LevelUpMode.valueOf(value.toUpperCase());
+    }
+}
@@ -0,0 +1,39 @@
+package com.spring.batch.springbatchexample.part4;
+
+import io.micrometer.common.util.StringUtils;
+import org.springframework.batch.item.ItemWriter;
+
+import javax.sql.DataSource;
+
+/**
+ * 등급을 올린 User 를 저장하는 방법. 기본값은 repository save 이고, levelUpWriter=jdbc / optimistic 으로 바꾼다.
+ */
+public enum LevelUpWriterMode {
+    JPA,
+    JDBC,
+    OPTIMISTIC;
+
+    public static LevelUpWriterMode of(String value) {
+        if (StringUtils.isEmpty(value)) {
+            return JPA;
+        }
+        return LevelUpWriterMode.valueOf(value.toUpperCase());
+    }
+
+    public ItemWriter<User> writer(UserRepository userRepository, DataSource dataSource) {
+        if (this == JDBC) {
+            return new UserLevelUpItemWriter(dataSource);
+        }
+        if (this == OPTIMISTIC) {
+            return new UserLevelUpItemWriter(dataSource, true);
+        }
+        return users -> {
+            LevelUpCounts levelUpCounts = new LevelUpCounts();
+            users.forEach( user -> {
+                levelUpCounts.add(user.levelUp());
+                userRepository.save(user);
+            });
+            levelUpCounts.addToStepExecution();
+        };
+    }
+}
@@ -49,8 +49,8 @@ public class User {
         return nextLevel;
     }
 
-    private int getTotalAmount() {
-        return this.orders.stream().mapToInt(Orders::getAmount).sum();
+    private long getTotalAmount() {
+        return this.orders.stream().mapToLong(Orders::getAmount).sum();
     }
 
     public enum Grade {
@@ -67,7 +67,7 @@ public class User {
             this.nextLevel = nextLevel;
         }
 
-        public static boolean availableLevelUp(Grade grade, int totalAmount) {
+        public static boolean availableLevelUp(Grade grade, long totalAmount) {
             if(Objects.isNull(grade)){
                 return false;
             }
@@ -79,7 +79,7 @@ public class User {
             return totalAmount >= grade.nextAmount;
         }
 
-        private static Grade getNextLevel(int totalAmount) {
+        public static Grade getNextLevel(long totalAmount) {
             if(totalAmount >= Grade.VIP.nextAmount)
                 return Grade.VIP;
             if(totalAmount >= Grade.GOLD.nextAmount)
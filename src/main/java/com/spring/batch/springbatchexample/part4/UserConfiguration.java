@@ -1,7 +1,13 @@
 package com.spring.batch.springbatchexample.part4;
 
+import com.spring.batch.springbatchexample.part3.AutoIncrementIdRequiredListener;
+import com.spring.batch.springbatchexample.part3.StringBuilderLineAggregator;
+import com.spring.batch.springbatchexample.part5.DailyOrderTotalsConfiguration;
+import com.spring.batch.springbatchexample.part5.GroupedCursorItemReader;
 import com.spring.batch.springbatchexample.part5.JobParametersDecide;
 import com.spring.batch.springbatchexample.part5.OrderStatistics;
+import com.spring.batch.springbatchexample.part5.OrderStatisticsItemReaders;
+import io.micrometer.common.util.StringUtils;
 import jakarta.persistence.EntityManagerFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
@@ -14,27 +20,22 @@ import org.springframework.batch.core.step.builder.StepBuilder;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.database.JdbcPagingItemReader;
 import org.springframework.batch.item.database.JpaPagingItemReader;
-import org.springframework.batch.item.database.Order;
-import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
 import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
 import org.springframework.batch.item.file.FlatFileItemWriter;
 import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
 import org.springframework.core.io.FileSystemResource;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
-import java.time.LocalDate;
+import java.time.LocalDateTime;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
 
 @Configuration
 @Slf4j
@@ -45,26 +46,31 @@ public class UserConfiguration {
     private final PlatformTransactionManager transactionManager;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
+    private final Step dailyOrderTotalsStep;
+    private final Environment environment;
     private final String JOB_NAME = "userJob";
 
-    public UserConfiguration(UserRepository userRepository, JobRepository jobRepository, PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory, DataSource dataSource) {
+    public UserConfiguration(UserRepository userRepository, JobRepository jobRepository, PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory, DataSource dataSource, Environment environment, @Qualifier(DailyOrderTotalsConfiguration.STEP_NAME) Step dailyOrderTotalsStep) {
         this.userRepository = userRepository;
         this.jobRepository = jobRepository;
         this.transactionManager = transactionManager;
         this.entityManagerFactory = entityManagerFactory;
         this.dataSource = dataSource;
+        this.dailyOrderTotalsStep = dailyOrderTotalsStep;
+        this.environment = environment;
     }
 
     @Bean(JOB_NAME)
     public Job userJob() throws Exception {
         return new JobBuilder(JOB_NAME, jobRepository)
                 .incrementer(new RunIdIncrementer())
-                .start(this.saveUserStep())
-                .next(this.userLevelUpStep())
+                .start(this.saveUserStep(null, null))
+                .next(this.userLevelUpStep(null, null))
                 .listener(new LevelUpJobExecutionListener(userRepository))
                 .next(new JobParametersDecide("date"))
                 .on(JobParametersDecide.CONTINUE.getName())
-                .to(this.orderStatisticsStep(null, null))
+                .to(this.dailyOrderTotalsStep)
+                .next(this.orderStatisticsStep(null, null))
                 .build()
                 .build();
     }
@@ -84,16 +90,9 @@ public class UserConfiguration {
         YearMonth yearMonth = YearMonth.parse(date);
         String fileName = yearMonth.getYear() + "년" + yearMonth.getMonthValue() + "월_일별_주문_금액.csv";
 
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] {"amount", "date"});
-
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
         FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
                 .resource(new FileSystemResource(path + fileName))
-                .lineAggregator(lineAggregator)
+                .lineAggregator(new StringBuilderLineAggregator<>(OrderStatistics::appendCsvLine))
                 .name(JOB_NAME + "_orderStatisticsWriter")
                 .encoding("UTF-8")
                 .headerCallback(writer -> {
@@ -104,57 +103,95 @@ public class UserConfiguration {
         return itemWriter;
     }
 
-    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
-        YearMonth yearMonth = YearMonth.parse(date);
-
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("startDate", yearMonth.atDay(1));
-        parameters.put("endDate", yearMonth.atEndOfMonth());
-
-        Map<String, Order> sortKey = new HashMap<>();
-        sortKey.put("created_date", Order.ASCENDING);
-        JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
-                .dataSource(this.dataSource)
-                .rowMapper((resultSet, i) -> OrderStatistics.builder()
-                        .amount(resultSet.getString(1))
-                        .date(LocalDate.parse(resultSet.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
-                .pageSize(1000)
-                .name(JOB_NAME + "_orderStatisticsItemReader")
-                .selectClause("sum(amount), created_date")
-                .fromClause("orders")
-                .whereClause("created_date >= :startDate and created_date <= :endDate")
-                .groupClause("created_date")
-                .parameterValues(parameters)
-                .sortKeys(sortKey)
-                .build();
-        itemReader.afterPropertiesSet();
-        return itemReader;
+    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) {
+        return OrderStatisticsItemReaders.dailyTotals(this.dataSource, JOB_NAME + "_orderStatisticsItemReader", YearMonth.parse(date));
     }
 
     @Bean(JOB_NAME + "_saveUserStep")
-    public Step saveUserStep() {
+    @JobScope
+    public Step saveUserStep(@Value("#{jobParameters[size]}") String size,
+                             @Value("#{jobParameters[batchSize]}") String batchSize) {
+        if (StringUtils.isNotEmpty(batchSize)) {
+            // size 는 금액 구간 하나의 회원 수다. 기본값은 SaveUserTasklet 과 같은 10000 x 4 명이다.
+            int usersPerTier = StringUtils.isNotEmpty(size) ? Integer.parseInt(size) : 10000;
+            return new StepBuilder(JOB_NAME + "_saveUserStep", jobRepository)
+                    .tasklet(new BulkSaveUserTasklet(dataSource, usersPerTier, Integer.parseInt(batchSize)), transactionManager)
+                    .listener(new AutoIncrementIdRequiredListener(environment))
+                    .build();
+        }
+
         return new StepBuilder(JOB_NAME + "_saveUserStep", jobRepository)
                 .tasklet(new SaveUserTasklet(userRepository), transactionManager)
                 .build();
     }
 
     @Bean(JOB_NAME + "_userLevelUpStep")
-    public Step userLevelUpStep() throws Exception {
+    @JobScope
+    public Step userLevelUpStep(@Value("#{jobParameters[levelUpMode]}") String levelUpMode,
+                                @Value("#{jobParameters[levelUpWriter]}") String levelUpWriter) throws Exception {
+        LevelUpMode mode = LevelUpMode.of(levelUpMode);
+        if (mode == LevelUpMode.BULK) {
+            return new StepBuilder(JOB_NAME + "_userLevelUpStep", jobRepository)
+                    .tasklet(new BulkLevelUpTasklet(dataSource, 1000), transactionManager)
+                    .build();
+        }
+        if (mode == LevelUpMode.PROJECTION || mode == LevelUpMode.FETCH) {
+            return new StepBuilder(JOB_NAME + "_userLevelUpStep", jobRepository)
+                    .<UserGradeCandidate, UserGradeCandidate>chunk(1000, transactionManager)
+                    .reader(mode == LevelUpMode.FETCH ? orderAmountItemReader() : candidateItemReader())
+                    .processor(candidateItemProcessor())
+                    .writer(candidateItemWriter())
+                    .build();
+        }
+
         return new StepBuilder(JOB_NAME + "_userLevelUpStep", jobRepository)
                 .<User,User>chunk(1000, transactionManager)
-                .reader(itemReader())
+                .reader(mode == LevelUpMode.PAGING ? pagingItemReader() : itemReader())
                 .processor(itemProcessor())
-                .writer(itemWriter())
+                .writer(itemWriter(LevelUpWriterMode.of(levelUpWriter)))
                 .build();
     }
 
-    private ItemWriter<? super User> itemWriter() {
-        return users->
-            users.forEach( user -> {
-                user.levelUp();
-                userRepository.save(user);
-            });
+    private ItemWriter<UserGradeCandidate> candidateItemWriter() {
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        return candidates -> {
+            // chunk 안의 회원은 같은 시각으로 갱신한다.
+            LocalDateTime updatedDate = LocalDateTime.now();
+            LevelUpCounts levelUpCounts = new LevelUpCounts();
+            jdbcTemplate.batchUpdate("update users set grade = ?, updated_date = ? where id = ?",
+                    candidates.getItems(), candidates.size(), (preparedStatement, candidate) -> {
+                        preparedStatement.setString(1, candidate.grade().name());
+                        preparedStatement.setObject(2, updatedDate);
+                        preparedStatement.setLong(3, candidate.id());
+                    });
+            candidates.forEach(candidate -> levelUpCounts.add(candidate.grade()));
+            levelUpCounts.addToStepExecution();
+        };
+    }
+
+    private ItemProcessor<UserGradeCandidate, UserGradeCandidate> candidateItemProcessor() {
+        return candidate -> candidate.availableLevelUp() ? candidate.levelUp() : null;
+    }
+
+    private ItemReader<UserGradeCandidate> candidateItemReader() {
+        // 집계 쿼리는 한 번만 실행하고, 재시작하면 마지막으로 읽은 회원 id 다음부터 읽는다.
+        GroupedCursorItemReader<UserGradeCandidate> itemReader = new GroupedCursorItemReader<>(dataSource,
+                (resultSet, i) -> new UserGradeCandidate(
+                        resultSet.getLong(1),
+                        resultSet.getString(2) == null ? null : User.Grade.valueOf(resultSet.getString(2)),
+                        resultSet.getLong(3)),
+                UserGradeCandidate::id);
+        itemReader.setSelectClause("u.id, u.grade, coalesce(sum(o.amount), 0)");
+        itemReader.setFromClause("users u left join orders o on o.user_id = u.id");
+        itemReader.setGroupClause("u.id, u.grade");
+        itemReader.setSortKey("u.id");
+        itemReader.setFetchSize(1000);
+        itemReader.setName(JOB_NAME + "_userGradeCandidateItemReader");
+        return itemReader;
+    }
+
+    private ItemWriter<? super User> itemWriter(LevelUpWriterMode writerMode) {
+        return writerMode.writer(userRepository, dataSource);
     }
 
     private ItemProcessor<? super User, ? extends User> itemProcessor() {
@@ -168,11 +205,26 @@ public class UserConfiguration {
         };
     }
 
+    private ItemReader<UserGradeCandidate> orderAmountItemReader() {
+        UserOrderAmountItemReader itemReader = new UserOrderAmountItemReader(dataSource);
+        itemReader.setPageSize(1000);
+        itemReader.setName(JOB_NAME + "_userOrderAmountItemReader");
+        return itemReader;
+    }
+
     private ItemReader<? extends User> itemReader() throws Exception {
+        KeysetPagingItemReader<User> itemReader = new KeysetPagingItemReader<>(entityManagerFactory, User.class, User::getId);
+        itemReader.setPageSize(1000);
+        itemReader.setName(JOB_NAME + "_userItemReader");
+        return itemReader;
+    }
+
+    private ItemReader<? extends User> pagingItemReader() throws Exception {
         JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-                .queryString("select u from User u")
+                .queryString("select u from users u order by u.id")
                 .entityManagerFactory(entityManagerFactory)
                 .pageSize(1000)
+                .transacted(false)
                 .name(JOB_NAME + "_userItemReader")
                 .build();
         itemReader.afterPropertiesSet();
@@ -0,0 +1,12 @@
+package com.spring.batch.springbatchexample.part4;
+
+public record UserGradeCandidate(long id, User.Grade grade, long totalAmount) {
+
+    public boolean availableLevelUp() {
+        return User.Grade.availableLevelUp(grade, totalAmount);
+    }
+
+    public UserGradeCandidate levelUp() {
+        return new UserGradeCandidate(id, User.Grade.getNextLevel(totalAmount), totalAmount);
+    }
+}
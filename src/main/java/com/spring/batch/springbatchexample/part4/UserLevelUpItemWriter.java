@@ -0,0 +1,68 @@
+package com.spring.batch.springbatchexample.part4;
+
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 등급을 올린 User 를 영속성 컨텍스트 merge 없이 chunk 당 한 번의 JDBC batch update 로 저장한다.
+ * optimistic 모드에서는 읽을 당시의 등급이 그대로인 row 만 갱신하고, 갱신되지 않은 row 가 있으면 실패시킨다.
+ */
+public class UserLevelUpItemWriter implements ItemWriter<User> {
+    private static final String UPDATE_GRADE = "update users set grade = ?, updated_date = ? where id = ?";
+    private static final String UPDATE_GRADE_IF_UNCHANGED = UPDATE_GRADE + " and grade = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean optimistic;
+
+    public UserLevelUpItemWriter(DataSource dataSource) {
+        this(dataSource, false);
+    }
+
+    public UserLevelUpItemWriter(DataSource dataSource, boolean optimistic) {
+        this(new JdbcTemplate(dataSource), optimistic);
+    }
+
+    UserLevelUpItemWriter(JdbcTemplate jdbcTemplate, boolean optimistic) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.optimistic = optimistic;
+    }
+
+    @Override
+    public void write(Chunk<? extends User> chunk) throws Exception {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> parameters = new ArrayList<>(chunk.size());
+        LevelUpCounts levelUpCounts = new LevelUpCounts();
+        for (User user : chunk) {
+            User.Grade previousGrade = user.getGrade();
+            User.Grade nextGrade = user.levelUp();
+            levelUpCounts.add(nextGrade);
+
+            if (optimistic) {
+                parameters.add(new Object[]{nextGrade.name(), user.getUpdatedDate(), user.getId(), previousGrade.name()});
+            } else {
+                parameters.add(new Object[]{nextGrade.name(), user.getUpdatedDate(), user.getId()});
+            }
+        }
+
+        int[] updateCounts = jdbcTemplate.batchUpdate(optimistic ? UPDATE_GRADE_IF_UNCHANGED : UPDATE_GRADE, parameters);
+
+        if (optimistic) {
+            for (int i = 0; i < updateCounts.length; i++) {
+                // rewriteBatchedStatements 를 쓰면 드라이버가 SUCCESS_NO_INFO(-2) 를 돌려주므로 0 건만 실패로 본다.
+                if (updateCounts[i] == 0) {
+                    throw new OptimisticLockingFailureException("User grade was changed concurrently. id : " + parameters.get(i)[2]);
+                }
+            }
+        }
+        levelUpCounts.addToStepExecution();
+    }
+}
@@ -0,0 +1,185 @@
+package com.spring.batch.springbatchexample.part4;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.util.ClassUtils;
+
+import javax.sql.DataSource;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 한 페이지의 회원을 id 구간으로 읽고, 그 회원들의 주문 금액 합계를 {@code user_id in (...)} 한 번으로 읽어 {@link UserGradeCandidate} 로 돌려준다.
+ * 페이지 당 쿼리는 최대 2번이며 User / Orders entity 는 만들지 않는다.
+ * chunk 당 실행한 쿼리 수를 metric 과 ExecutionContext 에 남긴다.
+ */
+public class UserOrderAmountItemReader extends AbstractItemCountingItemStreamItemReader<UserGradeCandidate> implements ChunkListener {
+    private static final String LAST_ID = "lastId";
+    private static final String QUERY_COUNT = "queryCount";
+
+    private static final String SELECT_USERS = "select id, grade from users " +
+            "where id > :lastId and id <= :maxId " +
+            "order by id " +
+            "limit :size";
+
+    private static final String SELECT_TOTAL_AMOUNT = "select user_id, sum(amount) from orders " +
+            "where user_id in (:ids) " +
+            "group by user_id";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private int pageSize = 1000;
+    private Long minId;
+    private Long maxId;
+
+    private final Deque<UserGradeCandidate> page = new ArrayDeque<>();
+    private Long lastId;
+    private long lastFetchedId;
+    private boolean lastPage;
+
+    private String name;
+    private long queryCount;
+    private long chunkQueryCount;
+    private DistributionSummary queriesPerChunk;
+
+    public UserOrderAmountItemReader(DataSource dataSource) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        setName(ClassUtils.getShortName(UserOrderAmountItemReader.class));
+    }
+
+    @Override
+    public void setName(String name) {
+        super.setName(name);
+        this.name = name;
+    }
+
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public void setMinId(Long minId) {
+        this.minId = minId;
+    }
+
+    public void setMaxId(Long maxId) {
+        this.maxId = maxId;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        if (isSaveState() && executionContext.containsKey(getExecutionContextKey(LAST_ID))) {
+            this.lastId = executionContext.getLong(getExecutionContextKey(LAST_ID));
+        }
+        this.queryCount = executionContext.getLong(getExecutionContextKey(QUERY_COUNT), 0L);
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        super.update(executionContext);
+        if (isSaveState() && lastId != null) {
+            executionContext.putLong(getExecutionContextKey(LAST_ID), lastId);
+        }
+        executionContext.putLong(getExecutionContextKey(QUERY_COUNT), queryCount);
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        if (lastId != null) {
+            this.lastFetchedId = lastId;
+        } else {
+            this.lastFetchedId = minId != null ? minId - 1 : Long.MIN_VALUE;
+        }
+        this.lastPage = false;
+        this.queriesPerChunk = DistributionSummary.builder("batch.reader.queries.per.chunk")
+                .tag("name", name)
+                .register(Metrics.globalRegistry);
+    }
+
+    @Override
+    protected UserGradeCandidate doRead() throws Exception {
+        if (page.isEmpty() && !lastPage) {
+            readPage();
+        }
+
+        UserGradeCandidate candidate = page.poll();
+        if (candidate != null) {
+            lastId = candidate.id();
+        }
+        return candidate;
+    }
+
+    private void readPage() {
+        List<Long> ids = new ArrayList<>(pageSize);
+        Map<Long, User.Grade> grades = new HashMap<>();
+
+        MapSqlParameterSource parameters = new MapSqlParameterSource()
+                .addValue("lastId", lastFetchedId)
+                .addValue("maxId", maxId != null ? maxId : Long.MAX_VALUE)
+                .addValue("size", pageSize);
+
+        jdbcTemplate.query(SELECT_USERS, parameters, resultSet -> {
+            long id = resultSet.getLong(1);
+            String grade = resultSet.getString(2);
+            ids.add(id);
+            grades.put(id, grade == null ? null : User.Grade.valueOf(grade));
+        });
+        countQuery();
+
+        if (ids.size() < pageSize) {
+            lastPage = true;
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        lastFetchedId = ids.get(ids.size() - 1);
+
+        Map<Long, Long> totalAmounts = new HashMap<>();
+        jdbcTemplate.query(SELECT_TOTAL_AMOUNT, new MapSqlParameterSource("ids", ids), resultSet -> {
+            totalAmounts.put(resultSet.getLong(1), resultSet.getLong(2));
+        });
+        countQuery();
+
+        for (Long id : ids) {
+            page.add(new UserGradeCandidate(id, grades.get(id), totalAmounts.getOrDefault(id, 0L)));
+        }
+    }
+
+    private void countQuery() {
+        queryCount++;
+        chunkQueryCount++;
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+        chunkQueryCount = 0;
+    }
+
+    @Override
+    public void afterChunk(ChunkContext context) {
+        if (queriesPerChunk != null) {
+            queriesPerChunk.record(chunkQueryCount);
+        }
+    }
+
+    @Override
+    protected void jumpToItem(int itemIndex) {
+        // 재시작 위치는 item 개수가 아니라 lastId 로 복원한다.
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        page.clear();
+        lastId = null;
+    }
+}
@@ -0,0 +1,27 @@
+package com.spring.batch.springbatchexample.part5;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * 일별 주문 금액 합계. 통계 step 이 orders 를 직접 집계하지 않도록 DailyOrderTotalsTasklet 이 기간마다 다시 계산해 둔다.
+ */
+@Entity
+@Table(name = "daily_order_totals")
+@Getter
+@NoArgsConstructor
+public class DailyOrderTotal {
+    @Id
+    @Column(name = "order_date", nullable = false)
+    private LocalDate orderDate;
+
+    private long totalAmount;
+
+    private long orderCount;
+}
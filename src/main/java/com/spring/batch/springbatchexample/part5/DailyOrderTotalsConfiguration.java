@@ -0,0 +1,47 @@
+package com.spring.batch.springbatchexample.part5;
+
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.time.YearMonth;
+
+/**
+ * 회원 등급 job 들이 통계 step 앞에서 함께 쓰는 step.
+ * date job parameter 의 월 중 아직 확정되지 않은 날짜만 orders 에서 다시 계산해 daily_order_totals 에 둔다. 통계 step 은 이 테이블만 읽는다.
+ * rebuild=true 로 실행하면 확정된 날짜도 포함해 한 달 전체를 다시 계산한다.
+ */
+@Configuration
+public class DailyOrderTotalsConfiguration {
+    public static final String STEP_NAME = "dailyOrderTotalsStep";
+    // 주문은 created_date 로부터 이 일수 안에 commit 된다고 본다.
+    private static final int LATE_DAYS = 3;
+
+    private final JobRepository jobRepository;
+    private final PlatformTransactionManager transactionManager;
+    private final DataSource dataSource;
+
+    public DailyOrderTotalsConfiguration(JobRepository jobRepository, PlatformTransactionManager transactionManager, DataSource dataSource) {
+        this.jobRepository = jobRepository;
+        this.transactionManager = transactionManager;
+        this.dataSource = dataSource;
+    }
+
+    @Bean(STEP_NAME)
+    @JobScope
+    public Step dailyOrderTotalsStep(@Value("#{jobParameters[date]}") String date,
+                                     @Value("#{jobParameters[rebuild]}") String rebuild) {
+        DailyOrderTotalsTasklet tasklet = new DailyOrderTotalsTasklet(dataSource, YearMonth.parse(date), 7, LATE_DAYS,
+                Boolean.parseBoolean(rebuild), Clock.systemDefaultZone());
+        return new StepBuilder(STEP_NAME, jobRepository)
+                .tasklet(tasklet, transactionManager)
+                .build();
+    }
+}
@@ -0,0 +1,109 @@
+package com.spring.batch.springbatchexample.part5;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+/**
+ * 한 달의 일별 주문 합계를 daily_order_totals 에 둔다. 월마다 확정된 날짜(watermark) 다음 날부터만 orders 를 읽는다.
+ * <p>
+ * 오늘보다 lateDays 일 넘게 지난 날짜는 늦게 commit 되는 주문이 더 없다고 보고 확정한다.
+ * 확정되지 않은 날짜는 실행마다 날짜 구간별로 지우고 orders 에서 다시 넣으므로 늦게 commit 된 주문이나 수정 / 삭제된 주문도 반영된다.
+ * 이미 확정된 날짜의 주문이 바뀌면 rebuild 로 한 달 전체를 다시 계산한다.
+ * 모든 날짜가 확정된 달은 orders 를 읽지 않고 바로 끝난다.
+ * <p>
+ * daysPerTransaction 일씩 한 transaction 으로 처리하고, watermark 와 다음 날짜를 같은 transaction 으로 남겨 재시작하면 이어서 계산한다.
+ */
+public class DailyOrderTotalsTasklet implements Tasklet {
+    private static final String NEXT_DATE = "dailyOrderTotals.nextDate";
+
+    private static final String DELETE_DAILY_TOTALS = "delete from daily_order_totals " +
+            "where order_date >= :from and order_date <= :to";
+    private static final String INSERT_DAILY_TOTALS = "insert into daily_order_totals(order_date, total_amount, order_count) " +
+            "select created_date, sum(amount), count(*) from orders " +
+            "where created_date >= :from and created_date <= :to " +
+            "group by created_date";
+    private static final String SELECT_WATERMARK = "select final_date from order_totals_watermark where order_month = :month";
+    private static final String UPDATE_WATERMARK = "update order_totals_watermark set final_date = :finalDate where order_month = :month";
+    private static final String INSERT_WATERMARK = "insert into order_totals_watermark(order_month, final_date) values (:month, :finalDate)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final YearMonth month;
+    private final int daysPerTransaction;
+    private final int lateDays;
+    private final boolean rebuild;
+    private final Clock clock;
+
+    public DailyOrderTotalsTasklet(DataSource dataSource, YearMonth month, int daysPerTransaction, int lateDays, boolean rebuild, Clock clock) {
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(dataSource);
+        this.month = month;
+        this.daysPerTransaction = daysPerTransaction;
+        this.lateDays = lateDays;
+        this.rebuild = rebuild;
+        this.clock = clock;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        ExecutionContext executionContext = contribution.getStepExecution().getExecutionContext();
+        LocalDate today = LocalDate.now(clock);
+        LocalDate lastDate = month.atEndOfMonth().isBefore(today) ? month.atEndOfMonth() : today;
+        LocalDate finalDate = finalDate();
+
+        LocalDate from;
+        if (executionContext.containsKey(NEXT_DATE)) {
+            from = LocalDate.parse(executionContext.getString(NEXT_DATE));
+        } else if (rebuild || finalDate == null) {
+            from = month.atDay(1);
+        } else {
+            from = finalDate.plusDays(1);
+        }
+        if (from.isAfter(lastDate)) {
+            return RepeatStatus.FINISHED;
+        }
+        LocalDate to = from.plusDays(daysPerTransaction - 1L);
+        if (to.isAfter(lastDate)) {
+            to = lastDate;
+        }
+
+        MapSqlParameterSource range = new MapSqlParameterSource()
+                .addValue("from", from)
+                .addValue("to", to);
+        jdbcTemplate.update(DELETE_DAILY_TOTALS, range);
+        contribution.incrementWriteCount(jdbcTemplate.update(INSERT_DAILY_TOTALS, range));
+
+        // 다시 계산한 날짜 중 lateDays 가 지난 날짜까지 확정한다.
+        LocalDate settled = today.minusDays(lateDays + 1L);
+        LocalDate newFinalDate = to.isBefore(settled) ? to : settled;
+        if (!newFinalDate.isBefore(from) && (finalDate == null || newFinalDate.isAfter(finalDate))) {
+            saveFinalDate(finalDate == null, newFinalDate);
+        }
+
+        LocalDate next = to.plusDays(1);
+        executionContext.putString(NEXT_DATE, next.toString());
+        return next.isAfter(lastDate) ? RepeatStatus.FINISHED : RepeatStatus.CONTINUABLE;
+    }
+
+    private LocalDate finalDate() {
+        List<LocalDate> finalDates = jdbcTemplate.queryForList(SELECT_WATERMARK,
+                new MapSqlParameterSource("month", month.toString()), LocalDate.class);
+        return finalDates.isEmpty() ? null : finalDates.get(0);
+    }
+
+    private void saveFinalDate(boolean insert, LocalDate finalDate) {
+        MapSqlParameterSource watermark = new MapSqlParameterSource()
+                .addValue("month", month.toString())
+                .addValue("finalDate", finalDate);
+        jdbcTemplate.update(insert ? INSERT_WATERMARK : UPDATE_WATERMARK, watermark);
+    }
+}
@@ -0,0 +1,163 @@
+package com.spring.batch.springbatchexample.part5;
+
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.support.AbstractItemCountingItemStreamItemReader;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * group by 집계 쿼리를 한 번만 실행하고 forward-only cursor 로 끝까지 읽는 reader.
+ * <p>
+ * 쿼리는 select / from / where / group by 절과 sortKey 로 나눠 받고, sortKey 순으로 정렬해 읽는다.
+ * 마지막으로 읽은 key 를 ExecutionContext 에 저장하고, 재시작하면 where 절에 {@code sortKey > ?} 를 더해
+ * 그 다음 key 부터 집계한다. 앞서 읽은 group 을 다시 집계하거나 건너뛰며 읽지 않는다.
+ * MySQL 에서 fetchSize 가 적용되려면 jdbc url 에 useCursorFetch=true 가 필요하다.
+ */
+public class GroupedCursorItemReader<T> extends AbstractItemCountingItemStreamItemReader<T> {
+    private static final String LAST_KEY = "lastKey";
+
+    private final DataSource dataSource;
+    private final RowMapper<T> rowMapper;
+    private final Function<T, ?> keyExtractor;
+
+    private String selectClause;
+    private String fromClause;
+    private String whereClause;
+    private String groupClause;
+    private String sortKey;
+    private Object[] parameters = new Object[0];
+    private int fetchSize = 1000;
+
+    private Connection connection;
+    private PreparedStatement statement;
+    private ResultSet resultSet;
+    private Object lastKey;
+    private int rowNum;
+
+    public GroupedCursorItemReader(DataSource dataSource, RowMapper<T> rowMapper, Function<T, ?> keyExtractor) {
+        this.dataSource = dataSource;
+        this.rowMapper = rowMapper;
+        this.keyExtractor = keyExtractor;
+        setName(ClassUtils.getShortName(GroupedCursorItemReader.class));
+    }
+
+    public void setSelectClause(String selectClause) {
+        this.selectClause = selectClause;
+    }
+
+    public void setFromClause(String fromClause) {
+        this.fromClause = fromClause;
+    }
+
+    public void setWhereClause(String whereClause) {
+        this.whereClause = whereClause;
+    }
+
+    public void setGroupClause(String groupClause) {
+        this.groupClause = groupClause;
+    }
+
+    // 결과의 한 row 를 가리키는 유일한 column 으로, group by 가 있으면 그 column 중 하나여야 한다. keyExtractor 가 item 에서 같은 값을 꺼내야 한다.
+    public void setSortKey(String sortKey) {
+        this.sortKey = sortKey;
+    }
+
+    // whereClause 의 ? 에 차례로 들어갈 값
+    public void setParameters(Object... parameters) {
+        this.parameters = parameters;
+    }
+
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) {
+        if (isSaveState() && executionContext.containsKey(getExecutionContextKey(LAST_KEY))) {
+            this.lastKey = executionContext.get(getExecutionContextKey(LAST_KEY));
+        }
+        super.open(executionContext);
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) {
+        super.update(executionContext);
+        if (isSaveState() && lastKey != null) {
+            executionContext.put(getExecutionContextKey(LAST_KEY), lastKey);
+        }
+    }
+
+    @Override
+    protected void doOpen() throws Exception {
+        Assert.hasText(selectClause, "selectClause is required");
+        Assert.hasText(fromClause, "fromClause is required");
+        Assert.hasText(sortKey, "sortKey is required");
+
+        List<Object> arguments = new ArrayList<>(Arrays.asList(parameters));
+        if (lastKey != null) {
+            arguments.add(lastKey);
+        }
+
+        this.connection = dataSource.getConnection();
+        this.statement = connection.prepareStatement(sql(lastKey != null), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(fetchSize);
+        new ArgumentPreparedStatementSetter(arguments.toArray()).setValues(statement);
+        this.resultSet = statement.executeQuery();
+        this.rowNum = 0;
+    }
+
+    String sql(boolean restart) {
+        List<String> conditions = new ArrayList<>();
+        if (StringUtils.hasText(whereClause)) {
+            conditions.add("(" + whereClause + ")");
+        }
+        if (restart) {
+            conditions.add(sortKey + " > ?");
+        }
+
+        StringBuilder sql = new StringBuilder("select ").append(selectClause).append(" from ").append(fromClause);
+        if (!conditions.isEmpty()) {
+            sql.append(" where ").append(String.join(" and ", conditions));
+        }
+        if (StringUtils.hasText(groupClause)) {
+            sql.append(" group by ").append(groupClause);
+        }
+        return sql.append(" order by ").append(sortKey).toString();
+    }
+
+    @Override
+    protected T doRead() throws Exception {
+        if (!resultSet.next()) {
+            return null;
+        }
+        T item = rowMapper.mapRow(resultSet, rowNum++);
+        lastKey = keyExtractor.apply(item);
+        return item;
+    }
+
+    @Override
+    protected void jumpToItem(int itemIndex) {
+        // 재시작 위치는 item 개수가 아니라 lastKey 조건으로 복원한다.
+    }
+
+    @Override
+    protected void doClose() throws Exception {
+        JdbcUtils.closeResultSet(resultSet);
+        JdbcUtils.closeStatement(statement);
+        JdbcUtils.closeConnection(connection);
+        lastKey = null;
+    }
+}
@@ -7,12 +7,17 @@ import java.time.LocalDate;
 
 @Getter
 public class OrderStatistics {
-    private  String amount;
+    private long amount;
     private LocalDate date;
 
     @Builder
-    public OrderStatistics(String amount, LocalDate date) {
+    public OrderStatistics(long amount, LocalDate date) {
         this.amount = amount;
         this.date = date;
     }
+
+    // "amount,date" 형식의 CSV 한 줄. StringBuilderLineAggregator 에서 사용한다.
+    public void appendCsvLine(StringBuilder line) {
+        line.append(amount).append(',').append(date);
+    }
 }
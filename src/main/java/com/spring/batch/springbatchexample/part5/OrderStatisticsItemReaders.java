@@ -0,0 +1,47 @@
+package com.spring.batch.springbatchexample.part5;
+
+import org.springframework.jdbc.core.RowMapper;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+/**
+ * 일별 주문 금액 통계를 읽는 reader 를 만든다. 회원 등급 job 들이 같은 쿼리를 쓴다.
+ */
+public final class OrderStatisticsItemReaders {
+    private static final RowMapper<OrderStatistics> ROW_MAPPER = (resultSet, i) -> OrderStatistics.builder()
+            .amount(resultSet.getLong(1))
+            .date(resultSet.getObject(2, LocalDate.class))
+            .build();
+
+    private OrderStatisticsItemReaders() {
+    }
+
+    // DailyOrderTotalsTasklet 이 계산해 둔 daily_order_totals 에서 한 달을 읽는다.
+    public static GroupedCursorItemReader<OrderStatistics> dailyTotals(DataSource dataSource, String name, YearMonth yearMonth) {
+        GroupedCursorItemReader<OrderStatistics> itemReader = new GroupedCursorItemReader<>(dataSource, ROW_MAPPER, OrderStatistics::getDate);
+        itemReader.setSelectClause("total_amount, order_date");
+        itemReader.setFromClause("daily_order_totals");
+        itemReader.setWhereClause("order_date >= ? and order_date <= ?");
+        itemReader.setSortKey("order_date");
+        itemReader.setParameters(yearMonth.atDay(1), yearMonth.atEndOfMonth());
+        itemReader.setFetchSize(1000);
+        itemReader.setName(name);
+        return itemReader;
+    }
+
+    // daily_order_totals 를 아직 채우지 않은 기간도 읽을 수 있도록 orders 를 직접 일별로 집계한다.
+    public static GroupedCursorItemReader<OrderStatistics> orders(DataSource dataSource, String name, LocalDate startDate, LocalDate endDate) {
+        GroupedCursorItemReader<OrderStatistics> itemReader = new GroupedCursorItemReader<>(dataSource, ROW_MAPPER, OrderStatistics::getDate);
+        itemReader.setSelectClause("sum(amount), created_date");
+        itemReader.setFromClause("orders");
+        itemReader.setWhereClause("created_date >= ? and created_date <= ?");
+        itemReader.setGroupClause("created_date");
+        itemReader.setSortKey("created_date");
+        itemReader.setParameters(startDate, endDate);
+        itemReader.setFetchSize(1000);
+        itemReader.setName(name);
+        return itemReader;
+    }
+}
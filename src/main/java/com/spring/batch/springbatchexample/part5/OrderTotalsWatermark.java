@@ -0,0 +1,26 @@
+package com.spring.batch.springbatchexample.part5;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+
+/**
+ * 월마다 daily_order_totals 가 어느 날짜까지 확정됐는지 기록한다.
+ * finalDate 까지의 날짜는 늦게 들어오는 주문이 더 없다고 보고 다시 집계하지 않는다.
+ */
+@Entity
+@Table(name = "order_totals_watermark")
+@Getter
+@NoArgsConstructor
+public class OrderTotalsWatermark {
+    @Id
+    @Column(name = "order_month", nullable = false, length = 7)
+    private String orderMonth;
+
+    private LocalDate finalDate;
+}
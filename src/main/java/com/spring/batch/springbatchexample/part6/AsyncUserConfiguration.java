@@ -1,11 +1,16 @@
 package com.spring.batch.springbatchexample.part6;
 
+import com.spring.batch.springbatchexample.part3.StringBuilderLineAggregator;
+import com.spring.batch.springbatchexample.part4.KeysetPagingItemReader;
 import com.spring.batch.springbatchexample.part4.LevelUpJobExecutionListener;
+import com.spring.batch.springbatchexample.part4.LevelUpWriterMode;
 import com.spring.batch.springbatchexample.part4.SaveUserTasklet;
 import com.spring.batch.springbatchexample.part4.User;
 import com.spring.batch.springbatchexample.part4.UserRepository;
+import com.spring.batch.springbatchexample.part5.DailyOrderTotalsConfiguration;
 import com.spring.batch.springbatchexample.part5.JobParametersDecide;
 import com.spring.batch.springbatchexample.part5.OrderStatistics;
+import com.spring.batch.springbatchexample.part5.OrderStatisticsItemReaders;
 import jakarta.persistence.EntityManagerFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
@@ -20,15 +25,9 @@ import org.springframework.batch.integration.async.AsyncItemWriter;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.JpaPagingItemReader;
-import org.springframework.batch.item.database.Order;
-import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
 import org.springframework.batch.item.file.FlatFileItemWriter;
 import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -37,11 +36,7 @@ import org.springframework.core.task.TaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
-import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.Future;
 
 @Configuration
@@ -53,16 +48,22 @@ public class AsyncUserConfiguration {
     private final PlatformTransactionManager transactionManager;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
+    private final Step dailyOrderTotalsStep;
     private final String JOB_NAME = "asyncUserJob";
     private final TaskExecutor taskExecutor;
+    private final int stepConcurrency;
 
-    public AsyncUserConfiguration(UserRepository userRepository, JobRepository jobRepository, PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor) {
+    public AsyncUserConfiguration(UserRepository userRepository, JobRepository jobRepository, PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor,
+                                  @Value("${batch.executor.step-concurrency:8}") int stepConcurrency,
+                                  @Qualifier(DailyOrderTotalsConfiguration.STEP_NAME) Step dailyOrderTotalsStep) {
         this.userRepository = userRepository;
         this.jobRepository = jobRepository;
         this.transactionManager = transactionManager;
         this.entityManagerFactory = entityManagerFactory;
         this.dataSource = dataSource;
+        this.dailyOrderTotalsStep = dailyOrderTotalsStep;
         this.taskExecutor = taskExecutor;
+        this.stepConcurrency = stepConcurrency;
     }
 
     @Bean(JOB_NAME)
@@ -70,11 +71,12 @@ public class AsyncUserConfiguration {
         return new JobBuilder(JOB_NAME, jobRepository)
                 .incrementer(new RunIdIncrementer())
                 .start(this.saveUserStep())
-                .next(this.userLevelUpStep())
+                .next(this.userLevelUpStep(null, null))
                 .listener(new LevelUpJobExecutionListener(userRepository))
                 .next(new JobParametersDecide("date"))
                 .on(JobParametersDecide.CONTINUE.getName())
-                .to(this.orderStatisticsStep(null))
+                .to(this.dailyOrderTotalsStep)
+                .next(this.orderStatisticsStep(null))
                 .build()
                 .build();
     }
@@ -93,16 +95,9 @@ public class AsyncUserConfiguration {
         YearMonth yearMonth = YearMonth.parse(date);
         String fileName = yearMonth.getYear() + "년" + yearMonth.getMonthValue() + "월_일별_주문_금액.csv";
 
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] {"amount", "date"});
-
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
         FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
                 .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
+                .lineAggregator(new StringBuilderLineAggregator<>(OrderStatistics::appendCsvLine))
                 .name(JOB_NAME + "_orderStatisticsWriter")
                 .encoding("UTF-8")
                 .headerCallback(writer -> {
@@ -113,32 +108,8 @@ public class AsyncUserConfiguration {
         return itemWriter;
     }
 
-    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
-        YearMonth yearMonth = YearMonth.parse(date);
-
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("startDate", yearMonth.atDay(1));
-        parameters.put("endDate", yearMonth.atEndOfMonth());
-
-        Map<String, Order> sortKey = new HashMap<>();
-        sortKey.put("created_date", Order.ASCENDING);
-        JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
-                .dataSource(this.dataSource)
-                .rowMapper((resultSet, i) -> OrderStatistics.builder()
-                        .amount(resultSet.getString(1))
-                        .date(LocalDate.parse(resultSet.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
-                .pageSize(1000)
-                .name(JOB_NAME + "_orderStatisticsItemReader")
-                .selectClause("sum(amount), created_date")
-                .fromClause("orders")
-                .whereClause("created_date >= :startDate and created_date <= :endDate")
-                .groupClause("created_date")
-                .parameterValues(parameters)
-                .sortKeys(sortKey)
-                .build();
-        itemReader.afterPropertiesSet();
-        return itemReader;
+    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) {
+        return OrderStatisticsItemReaders.dailyTotals(this.dataSource, JOB_NAME + "_orderStatisticsItemReader", YearMonth.parse(date));
     }
 
     @Bean(JOB_NAME + "_saveUserStep")
@@ -149,21 +120,31 @@ public class AsyncUserConfiguration {
     }
 
     @Bean(JOB_NAME + "_userLevelUpStep")
-    public Step userLevelUpStep() throws Exception {
+    @JobScope
+    public Step userLevelUpStep(@Value("#{jobParameters[pipelined]}") String pipelined,
+                                @Value("#{jobParameters[levelUpWriter]}") String levelUpWriter) throws Exception {
+        LevelUpWriterMode writerMode = LevelUpWriterMode.of(levelUpWriter);
+        if (Boolean.parseBoolean(pipelined)) {
+            // 공용 pool 의 thread 가 하나씩 다음 chunk 를 미리 읽고 처리하며, write 와 commit 은 step thread 에서 한다.
+            // reader 는 tasklet 이 열고 닫으며 마지막으로 쓴 chunk 의 reader 상태만 저장하도록 tasklet 을 stream 으로 등록한다.
+            PipelinedChunkTasklet<User, User> tasklet = new PipelinedChunkTasklet<>(itemReader(), levelUpProcessor(),
+                    writerMode.writer(userRepository, dataSource), taskExecutor, 1000, 2);
+            return new StepBuilder(JOB_NAME + "_userLevelUpStep", jobRepository)
+                    .tasklet(tasklet, transactionManager)
+                    .stream(tasklet)
+                    .build();
+        }
+
         return new StepBuilder(JOB_NAME + "_userLevelUpStep", jobRepository)
                 .<User, Future<User>>chunk(1000, transactionManager)
                 .reader(itemReader())
                 .processor(itemProcessor())
-                .writer(itemWriter())
+                .writer(itemWriter(writerMode))
                 .build();
     }
 
-    private AsyncItemWriter< User> itemWriter() {
-        ItemWriter<User> itemWriter = users->
-            users.forEach( user -> {
-                user.levelUp();
-                userRepository.save(user);
-            });
+    private AsyncItemWriter< User> itemWriter(LevelUpWriterMode writerMode) {
+        ItemWriter<User> itemWriter = writerMode.writer(userRepository, dataSource);
 
         AsyncItemWriter<User> asyncItemWriter = new AsyncItemWriter<>();
         asyncItemWriter.setDelegate(itemWriter);
@@ -172,27 +153,26 @@ public class AsyncUserConfiguration {
     }
 
     private AsyncItemProcessor<User, User> itemProcessor() {
-        ItemProcessor<User, User> itemProcessor = user->{
+        AsyncItemProcessor<User, User> asyncItemProcessor = new AsyncItemProcessor<>();
+        asyncItemProcessor.setDelegate(levelUpProcessor());
+        // 공용 pool 을 함께 쓰되 이 step 이 동시에 실행하는 작업 수는 stepConcurrency 로 제한한다.
+        asyncItemProcessor.setTaskExecutor(new ConcurrencyLimitedTaskExecutor(JOB_NAME + "_userLevelUpStep", taskExecutor, stepConcurrency));
+        return asyncItemProcessor;
+    }
+
+    private ItemProcessor<User, User> levelUpProcessor() {
+        return user->{
             if(user.availableLevelUp()){
                 return user;
             }
             return null;
         };
-
-        AsyncItemProcessor<User, User> asyncItemProcessor = new AsyncItemProcessor<>();
-        asyncItemProcessor.setDelegate(itemProcessor);
-        asyncItemProcessor.setTaskExecutor(taskExecutor);
-        return asyncItemProcessor;
     }
 
-    private ItemReader<? extends User> itemReader() throws Exception {
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-                .queryString("select u from User u")
-                .entityManagerFactory(entityManagerFactory)
-                .pageSize(1000)
-                .name(JOB_NAME + "_userItemReader")
-                .build();
-        itemReader.afterPropertiesSet();
+    private KeysetPagingItemReader<User> itemReader() throws Exception {
+        KeysetPagingItemReader<User> itemReader = new KeysetPagingItemReader<>(entityManagerFactory, User.class, User::getId);
+        itemReader.setPageSize(1000);
+        itemReader.setName(JOB_NAME + "_userItemReader");
         return itemReader;
     }
 }
@@ -0,0 +1,76 @@
+package com.spring.batch.springbatchexample.part6;
+
+import java.time.Duration;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * queue 가 가득 찬 thread pool 에 작업을 넣으려 할 때 작업을 버리지 않고 제출한 쪽을 늦춘다.
+ * CALLER_RUNS 는 제출한 thread 가 직접 실행하고, BLOCK 은 blockTimeout 동안 queue 에 자리가 나기를 기다린다.
+ * 늦춘 횟수(backpressure)와 끝내 거절한 횟수(rejected)를 따로 세어 metric 으로 노출한다.
+ * pool 이 shutdown 중이면 기다리지 않고 거절한다.
+ */
+public class BackpressureRejectedExecutionHandler implements RejectedExecutionHandler {
+
+    public enum Policy {
+        CALLER_RUNS,
+        BLOCK;
+
+        public static Policy of(String value) {
+            return Policy.valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private final Policy policy;
+    private final Duration blockTimeout;
+    private final AtomicLong backpressureCount = new AtomicLong();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    public BackpressureRejectedExecutionHandler(Policy policy, Duration blockTimeout) {
+        this.policy = policy;
+        this.blockTimeout = blockTimeout;
+    }
+
+    @Override
+    public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+        if (executor.isShutdown()) {
+            throw reject("Executor has been shut down", null);
+        }
+        backpressureCount.incrementAndGet();
+
+        if (policy == Policy.CALLER_RUNS) {
+            task.run();
+            return;
+        }
+
+        try {
+            if (!executor.getQueue().offer(task, blockTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw reject("Timed out after " + blockTimeout + " waiting for queue space", null);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw reject("Interrupted while waiting for queue space", e);
+        }
+
+        // 기다리는 동안 shutdown 됐다면 queue 에 넣은 작업을 실행할 worker 가 없을 수 있으므로 꺼내고 거절한다.
+        if (executor.isShutdown() && executor.remove(task)) {
+            throw reject("Executor has been shut down", null);
+        }
+    }
+
+    private RejectedExecutionException reject(String message, Throwable cause) {
+        rejectedCount.incrementAndGet();
+        return new RejectedExecutionException(message, cause);
+    }
+
+    public long getBackpressureCount() {
+        return backpressureCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
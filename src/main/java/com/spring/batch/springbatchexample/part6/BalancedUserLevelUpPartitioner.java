@@ -0,0 +1,109 @@
+package com.spring.batch.springbatchexample.part6;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * id 범위를 균등하게 나누는 UserLevelUpPartitioner 와 달리 실제 row 수(또는 주문 수를 더한 가중치)가
+ * 비슷해지도록 id 구간을 나눈다. 각 partition 에는 기존과 같이 minId / maxId 를 넣는다.
+ */
+@Slf4j
+public class BalancedUserLevelUpPartitioner implements Partitioner {
+
+    // 회원 수 기준 : ntile 로 id 순서대로 gridSize 개의 같은 크기 묶음을 만든다.
+    private static final String SELECT_NTILE_RANGES = "select min(id), max(id), count(*) from (" +
+            "select id, ntile(?) over (order by id) bucket from users" +
+            ") t group by bucket order by bucket";
+
+    // 주문 수 기준 : 회원 1명 + 주문 수를 가중치로 누적합을 구해 gridSize 구간으로 자른다.
+    private static final String SELECT_WEIGHTED_RANGES = "select min(id), max(id), sum(weight) from (" +
+            "select id, weight, floor((sum(weight) over (order by id) - 1) * ? / ?) bucket from (" +
+            "select u.id id, count(o.id) + 1 weight from users u left join orders o on o.user_id = u.id group by u.id" +
+            ") w) t group by bucket order by bucket";
+
+    private static final String SELECT_TOTAL_WEIGHT = "select (select count(*) from users) + " +
+            "(select count(*) from orders o join users u on o.user_id = u.id)";
+
+    // partitioner 가 job 마다 새로 만들어져도 gauge 는 한 번만 등록하고 마지막으로 나눈 결과를 보여준다.
+    private static final AtomicLong SIZE_CV_BITS = Metrics.gauge("batch.partition.size.cv",
+            Tags.of("partitioner", "balancedUserLevelUp"), new AtomicLong(), bits -> Double.longBitsToDouble(bits.get()));
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean weightedByOrders;
+
+    public BalancedUserLevelUpPartitioner(DataSource dataSource, boolean weightedByOrders) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.weightedByOrders = weightedByOrders;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        List<long[]> ranges = selectRanges(gridSize);
+
+        Map<String, ExecutionContext> result = new HashMap<>();
+        long[] sizes = new long[ranges.size()];
+        for (int i = 0; i < ranges.size(); i++) {
+            long[] range = ranges.get(i);
+            ExecutionContext value = new ExecutionContext();
+            value.putLong("minId", range[0]);
+            value.putLong("maxId", range[1]);
+            result.put("partition" + i, value);
+            sizes[i] = range[2];
+        }
+
+        double sizeCoefficientOfVariation = coefficientOfVariation(sizes);
+        SIZE_CV_BITS.set(Double.doubleToLongBits(sizeCoefficientOfVariation));
+        log.info("partition {}개, 크기 변동계수 {}", sizes.length, String.format("%.4f", sizeCoefficientOfVariation));
+        return result;
+    }
+
+    private List<long[]> selectRanges(int gridSize) {
+        if (!weightedByOrders) {
+            return jdbcTemplate.query(SELECT_NTILE_RANGES, (resultSet, i) -> toRange(resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3)),
+                    gridSize);
+        }
+
+        Long totalWeight = jdbcTemplate.queryForObject(SELECT_TOTAL_WEIGHT, Long.class);
+        if (totalWeight == null || totalWeight == 0) {
+            return List.of();
+        }
+        return jdbcTemplate.query(SELECT_WEIGHTED_RANGES, (resultSet, i) -> toRange(resultSet.getLong(1), resultSet.getLong(2), resultSet.getLong(3)),
+                (long) gridSize, totalWeight);
+    }
+
+    private static long[] toRange(long minId, long maxId, long size) {
+        return new long[]{minId, maxId, size};
+    }
+
+    // 표준편차 / 평균. 0 에 가까울수록 partition 크기가 고르다.
+    static double coefficientOfVariation(long[] sizes) {
+        if (sizes.length == 0) {
+            return 0;
+        }
+        double mean = 0;
+        for (long size : sizes) {
+            mean += size;
+        }
+        mean /= sizes.length;
+        if (mean == 0) {
+            return 0;
+        }
+
+        double variance = 0;
+        for (long size : sizes) {
+            variance += (size - mean) * (size - mean);
+        }
+        variance /= sizes.length;
+        return Math.sqrt(variance) / mean;
+    }
+}
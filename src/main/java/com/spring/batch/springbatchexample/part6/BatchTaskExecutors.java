@@ -0,0 +1,46 @@
+package com.spring.batch.springbatchexample.part6;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.RejectedExecutionHandler;
+
+/**
+ * job 들이 함께 쓰는 TaskExecutor 를 만든다. bean 등록은 SpringBatchExampleApplication 이 한다.
+ */
+public final class BatchTaskExecutors {
+
+    private BatchTaskExecutors() {
+    }
+
+    // queue 를 제한해야 core 를 넘는 작업에 대해 max 까지 thread 가 늘고, 그래도 밀리면 rejectedExecutionHandler 가 제출한 쪽을 늦춘다.
+    public static ThreadPoolTaskExecutor platformThreads(int queueCapacity, RejectedExecutionHandler rejectedExecutionHandler) {
+        ThreadPoolTaskExecutor taskExecutor = new ThreadPoolTaskExecutor();
+        taskExecutor.setCorePoolSize(10);
+        taskExecutor.setMaxPoolSize(20);
+        taskExecutor.setQueueCapacity(queueCapacity);
+        taskExecutor.setRejectedExecutionHandler(rejectedExecutionHandler);
+        taskExecutor.setThreadNamePrefix("batch-thread-");
+        taskExecutor.initialize();
+        return taskExecutor;
+    }
+
+    // 작업 대부분이 JDBC 대기이므로 thread 수가 아니라 connection 수로 동시 실행을 제한한다(Java 21 이상).
+    // 제한에 걸린 execute 호출은 permit 이 날 때까지 기다린다.
+    public static SimpleAsyncTaskExecutor virtualThreads(int concurrencyLimit) {
+        SimpleAsyncTaskExecutor taskExecutor = new SimpleAsyncTaskExecutor("batch-virtual-");
+        taskExecutor.setVirtualThreads(true);
+        taskExecutor.setConcurrencyLimit(concurrencyLimit);
+        return taskExecutor;
+    }
+
+    public static int maximumPoolSize(DataSource dataSource) throws SQLException {
+        if (dataSource.isWrapperFor(HikariDataSource.class)) {
+            return dataSource.unwrap(HikariDataSource.class).getMaximumPoolSize();
+        }
+        return Runtime.getRuntime().availableProcessors() * PartitionSizing.CONNECTIONS_PER_WORKER + PartitionSizing.RESERVED_CONNECTIONS;
+    }
+}
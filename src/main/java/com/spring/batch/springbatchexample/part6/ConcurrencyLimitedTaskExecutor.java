@@ -0,0 +1,80 @@
+package com.spring.batch.springbatchexample.part6;
+
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.core.task.TaskExecutor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 공용 TaskExecutor 를 step 별로 나눠 쓰기 위한 wrapper.
+ * 동시에 실행 중인 작업이 limit 개이면 다음 execute 호출은 하나가 끝날 때까지 기다린다.
+ * AsyncItemProcessor 가 chunk 의 item 을 한꺼번에 pool queue 로 밀어넣는 것을 막는다.
+ * step / job scope 에서 실행마다 새로 만들어지므로 gauge 는 이름마다 한 번만 등록하고 가장 최근 인스턴스의 값을 보여준다.
+ */
+public class ConcurrencyLimitedTaskExecutor implements TaskExecutor {
+    private static final Map<String, AtomicReference<ConcurrencyLimitedTaskExecutor>> CURRENT = new ConcurrentHashMap<>();
+
+    private final TaskExecutor delegate;
+    private final int limit;
+    private final Semaphore permits;
+
+    public ConcurrencyLimitedTaskExecutor(String name, TaskExecutor delegate, int limit) {
+        this.delegate = delegate;
+        this.limit = limit;
+        this.permits = new Semaphore(limit);
+
+        CURRENT.computeIfAbsent(name, ConcurrencyLimitedTaskExecutor::registerGauges).set(this);
+    }
+
+    private static AtomicReference<ConcurrencyLimitedTaskExecutor> registerGauges(String name) {
+        AtomicReference<ConcurrencyLimitedTaskExecutor> current = new AtomicReference<>();
+        Tags tags = Tags.of("executor", name);
+        Metrics.gauge("batch.executor.active", tags, current, reference -> reference.get() == null ? 0 : reference.get().getActiveCount());
+        Metrics.gauge("batch.executor.queued", tags, current, reference -> reference.get() == null ? 0 : reference.get().getQueuedCount());
+        return current;
+    }
+
+    public int getActiveCount() {
+        return limit - permits.availablePermits();
+    }
+
+    public int getQueuedCount() {
+        return permits.getQueueLength();
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for an execution permit", e);
+        }
+
+        // CALLER_RUNS 처럼 delegate 가 호출한 thread 에서 실행하다 실패해도 permit 은 한 번만 돌려준다.
+        AtomicBoolean released = new AtomicBoolean();
+        Runnable release = () -> {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        };
+
+        try {
+            delegate.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    release.run();
+                }
+            });
+        } catch (RuntimeException e) {
+            release.run();
+            throw e;
+        }
+    }
+}
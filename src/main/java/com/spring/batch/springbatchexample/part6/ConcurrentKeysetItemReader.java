@@ -0,0 +1,231 @@
+package com.spring.batch.springbatchexample.part6;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.batch.core.ChunkListener;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.util.ExecutionContextUserSupport;
+import org.springframework.util.ClassUtils;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * multi-thread chunk step 용 reader.
+ * <p>
+ * 각 thread 는 공유 cursor 다음의 id windowSize 개를 차지하고({@code id > after order by id limit windowSize}),
+ * 차지한 구간 (after, lastId] 의 entity 를 자기 EntityManager 로 읽는다. id 사이가 비어 있어도 빈 구간을 조회하지 않는다.
+ * EntityManager 는 thread 마다 하나를 만들어 close 까지 다시 쓰고, 구간을 읽기 전에 clear 해 이전 entity 를 detach 한다.
+ * 읽은 구간은 모든 thread 가 함께 꺼내는 buffer 에 둔다. 한 thread 의 read 가 null 을 돌려주면 step 이 끝나므로,
+ * buffer 가 비고 다른 thread 가 읽고 있는 구간도 없을 때만 null 을 돌려준다.
+ * 구간은 그 구간의 item 이 들어간 chunk 가 모두 commit 된 뒤에 완료로 본다.
+ * ExecutionContext 에는 완료되지 않은 가장 작은 구간의 직전 id(watermark) 를 저장하므로,
+ * 재시작하면 watermark 다음 id 부터 다시 읽는다. watermark 위에서 이미 commit 된 구간은 다시 읽힐 수 있으므로
+ * processor / writer 는 같은 item 을 두 번 처리해도 결과가 같아야 한다.
+ */
+public class ConcurrentKeysetItemReader<T> implements ItemStreamReader<T>, ChunkListener {
+    private static final String WATERMARK = "watermark";
+
+    private final EntityManagerFactory entityManagerFactory;
+    private final Class<T> entityClass;
+    private final ExecutionContextUserSupport executionContextUserSupport = new ExecutionContextUserSupport();
+
+    private int windowSize = 1000;
+    private String idQueryString;
+    private String queryString;
+
+    // nextAfter, openWindows, buffered, loading 은 함께 바뀌어야 하므로 this 로 동기화한다.
+    private long nextAfter;
+    private boolean exhausted;
+    private final NavigableSet<Long> openWindows = new ConcurrentSkipListSet<>();
+    private final Deque<Window<T>> buffered = new ArrayDeque<>();
+    private int loading;
+
+    private final Map<Thread, Worker<T>> workers = new ConcurrentHashMap<>();
+
+    public ConcurrentKeysetItemReader(EntityManagerFactory entityManagerFactory, Class<T> entityClass) {
+        this.entityManagerFactory = entityManagerFactory;
+        this.entityClass = entityClass;
+        setName(ClassUtils.getShortName(ConcurrentKeysetItemReader.class));
+    }
+
+    public void setName(String name) {
+        executionContextUserSupport.setName(name);
+    }
+
+    public void setWindowSize(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    @Override
+    public synchronized void open(ExecutionContext executionContext) {
+        String entityName = entityManagerFactory.getMetamodel().entity(entityClass).getName();
+        this.idQueryString = "select e.id from " + entityName + " e where e.id > :after order by e.id";
+        this.queryString = "select e from " + entityName + " e where e.id > :after and e.id <= :last order by e.id";
+
+        String watermarkKey = executionContextUserSupport.getKey(WATERMARK);
+        this.nextAfter = executionContext.containsKey(watermarkKey) ? executionContext.getLong(watermarkKey) : Long.MIN_VALUE;
+        this.exhausted = false;
+        this.loading = 0;
+
+        openWindows.clear();
+        buffered.clear();
+        closeWorkers();
+    }
+
+    @Override
+    public synchronized void update(ExecutionContext executionContext) {
+        executionContext.putLong(executionContextUserSupport.getKey(WATERMARK), watermark());
+    }
+
+    // 아직 commit 되지 않은 구간 중 가장 작은 구간의 직전 id. 없으면 다음에 차지할 구간의 직전 id.
+    private long watermark() {
+        return openWindows.isEmpty() ? nextAfter : Math.min(openWindows.first(), nextAfter);
+    }
+
+    @Override
+    public void close() {
+        closeWorkers();
+    }
+
+    private void closeWorkers() {
+        workers.values().forEach(worker -> worker.entityManager.close());
+        workers.clear();
+    }
+
+    @Override
+    public T read() throws InterruptedException {
+        Worker<T> worker = workers.computeIfAbsent(Thread.currentThread(),
+                thread -> new Worker<>(entityManagerFactory.createEntityManager()));
+
+        while (true) {
+            long[] window;
+            synchronized (this) {
+                Window<T> current = buffered.peek();
+                if (current != null) {
+                    T item = current.items.poll();
+                    if (current.items.isEmpty()) {
+                        buffered.poll();
+                    }
+                    worker.readWindows.merge(current, 1, Integer::sum);
+                    return item;
+                }
+
+                window = nextWindow(worker.entityManager);
+                if (window == null) {
+                    if (loading == 0) {
+                        return null;
+                    }
+                    // 다른 thread 가 읽고 있는 구간이 buffer 에 들어올 때까지 기다린다.
+                    wait();
+                    continue;
+                }
+                loading++;
+            }
+
+            List<T> items = null;
+            try {
+                items = readWindow(worker.entityManager, window[0], window[1]);
+            } finally {
+                synchronized (this) {
+                    loading--;
+                    if (items != null && !items.isEmpty()) {
+                        buffered.add(new Window<>(window[0], items));
+                    } else if (items != null) {
+                        // 그 사이 row 가 지워져 빈 구간은 바로 완료한다. 읽다 실패한 구간은 watermark 아래에 남긴다.
+                        openWindows.remove(window[0]);
+                    }
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+    // 차지한 구간의 (직전 id, 마지막 id). id 조회는 index 만 읽으므로 cursor 를 잡고 있는 동안 해도 짧다.
+    private synchronized long[] nextWindow(EntityManager entityManager) {
+        if (exhausted) {
+            return null;
+        }
+        List<Long> ids = entityManager.createQuery(idQueryString, Long.class)
+                .setParameter("after", nextAfter)
+                .setMaxResults(windowSize)
+                .getResultList();
+        if (ids.isEmpty()) {
+            exhausted = true;
+            return null;
+        }
+
+        long after = nextAfter;
+        openWindows.add(after);
+        nextAfter = ids.get(ids.size() - 1);
+        return new long[]{after, nextAfter};
+    }
+
+    private List<T> readWindow(EntityManager entityManager, long after, long last) {
+        // 앞 구간에서 읽은 entity 를 detach 해 persistence context 가 커지지 않게 한다.
+        entityManager.clear();
+        return entityManager.createQuery(queryString, entityClass)
+                .setParameter("after", after)
+                .setParameter("last", last)
+                .getResultList();
+    }
+
+    @Override
+    public void beforeChunk(ChunkContext context) {
+    }
+
+    @Override
+    public synchronized void afterChunk(ChunkContext context) {
+        Worker<T> worker = workers.get(Thread.currentThread());
+        if (worker == null) {
+            return;
+        }
+        worker.readWindows.forEach((window, count) -> {
+            window.uncommitted -= count;
+            if (window.uncommitted == 0) {
+                openWindows.remove(window.after);
+            }
+        });
+        worker.readWindows.clear();
+    }
+
+    @Override
+    public void afterChunkError(ChunkContext context) {
+        // rollback 된 item 의 구간은 openWindows 에 남겨 watermark 가 그 아래에 머물게 한다.
+        Worker<T> worker = workers.get(Thread.currentThread());
+        if (worker != null) {
+            worker.readWindows.clear();
+        }
+    }
+
+    private static class Worker<T> {
+        private final EntityManager entityManager;
+        // 이번 chunk 에서 구간마다 꺼낸 item 수
+        private final Map<Window<T>, Integer> readWindows = new IdentityHashMap<>();
+
+        private Worker(EntityManager entityManager) {
+            this.entityManager = entityManager;
+        }
+    }
+
+    private static class Window<T> {
+        private final long after;
+        private final Deque<T> items;
+        // 아직 commit 되지 않은 item 수
+        private int uncommitted;
+
+        private Window(long after, List<T> items) {
+            this.after = after;
+            this.items = new ArrayDeque<>(items);
+            this.uncommitted = items.size();
+        }
+    }
+}
@@ -1,16 +1,21 @@
 package com.spring.batch.springbatchexample.part6;
 
+import com.spring.batch.springbatchexample.part3.StringBuilderLineAggregator;
 import com.spring.batch.springbatchexample.part4.LevelUpJobExecutionListener;
+import com.spring.batch.springbatchexample.part4.LevelUpWriterMode;
 import com.spring.batch.springbatchexample.part4.SaveUserTasklet;
 import com.spring.batch.springbatchexample.part4.User;
 import com.spring.batch.springbatchexample.part4.UserRepository;
+import com.spring.batch.springbatchexample.part5.DailyOrderTotalsConfiguration;
 import com.spring.batch.springbatchexample.part5.JobParametersDecide;
 import com.spring.batch.springbatchexample.part5.OrderStatistics;
+import com.spring.batch.springbatchexample.part5.OrderStatisticsItemReaders;
 import jakarta.persistence.EntityManagerFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobScope;
+import org.springframework.batch.core.configuration.annotation.StepScope;
 import org.springframework.batch.core.job.builder.JobBuilder;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.repository.JobRepository;
@@ -18,16 +23,10 @@ import org.springframework.batch.core.step.builder.StepBuilder;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.JpaPagingItemReader;
-import org.springframework.batch.item.database.Order;
-import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
 import org.springframework.batch.item.file.FlatFileItemWriter;
 import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
 import org.springframework.batch.repeat.RepeatOperations;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -36,11 +35,7 @@ import org.springframework.core.task.TaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
-import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
 
 @Configuration
 @Slf4j
@@ -51,15 +46,17 @@ public class MultiThreadUserConfiguration {
     private final PlatformTransactionManager transactionManager;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
+    private final Step dailyOrderTotalsStep;
     private final TaskExecutor taskExecutor;
     private final String JOB_NAME = "multiThreadUserJob";
 
-    public MultiThreadUserConfiguration(UserRepository userRepository, JobRepository jobRepository, PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor) {
+    public MultiThreadUserConfiguration(UserRepository userRepository, JobRepository jobRepository, PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor, @Qualifier(DailyOrderTotalsConfiguration.STEP_NAME) Step dailyOrderTotalsStep) {
         this.userRepository = userRepository;
         this.jobRepository = jobRepository;
         this.transactionManager = transactionManager;
         this.entityManagerFactory = entityManagerFactory;
         this.dataSource = dataSource;
+        this.dailyOrderTotalsStep = dailyOrderTotalsStep;
         this.taskExecutor = taskExecutor;
     }
 
@@ -72,7 +69,8 @@ public class MultiThreadUserConfiguration {
                 .listener(new LevelUpJobExecutionListener(userRepository))
                 .next(new JobParametersDecide("date"))
                 .on(JobParametersDecide.CONTINUE.getName())
-                .to(this.orderStatisticsStep(null))
+                .to(this.dailyOrderTotalsStep)
+                .next(this.orderStatisticsStep(null))
                 .build()
                 .build();
     }
@@ -91,16 +89,9 @@ public class MultiThreadUserConfiguration {
         YearMonth yearMonth = YearMonth.parse(date);
         String fileName = yearMonth.getYear() + "년" + yearMonth.getMonthValue() + "월_일별_주문_금액.csv";
 
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] {"amount", "date"});
-
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
         FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
                 .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
+                .lineAggregator(new StringBuilderLineAggregator<>(OrderStatistics::appendCsvLine))
                 .name(JOB_NAME + "_orderStatisticsWriter")
                 .encoding("UTF-8")
                 .headerCallback(writer -> {
@@ -111,32 +102,8 @@ public class MultiThreadUserConfiguration {
         return itemWriter;
     }
 
-    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
-        YearMonth yearMonth = YearMonth.parse(date);
-
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("startDate", yearMonth.atDay(1));
-        parameters.put("endDate", yearMonth.atEndOfMonth());
-
-        Map<String, Order> sortKey = new HashMap<>();
-        sortKey.put("created_date", Order.ASCENDING);
-        JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
-                .dataSource(this.dataSource)
-                .rowMapper((resultSet, i) -> OrderStatistics.builder()
-                        .amount(resultSet.getString(1))
-                        .date(LocalDate.parse(resultSet.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
-                .pageSize(1000)
-                .name(JOB_NAME + "_orderStatisticsItemReader")
-                .selectClause("sum(amount), created_date")
-                .fromClause("orders")
-                .whereClause("created_date >= :startDate and created_date <= :endDate")
-                .groupClause("created_date")
-                .parameterValues(parameters)
-                .sortKeys(sortKey)
-                .build();
-        itemReader.afterPropertiesSet();
-        return itemReader;
+    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) {
+        return OrderStatisticsItemReaders.dailyTotals(this.dataSource, JOB_NAME + "_orderStatisticsItemReader", YearMonth.parse(date));
     }
 
     @Bean(JOB_NAME + "_saveUserStep")
@@ -159,11 +126,13 @@ public class MultiThreadUserConfiguration {
     }
 
     private ItemWriter<? super User> itemWriter() {
-        return users->
-            users.forEach( user -> {
-                user.levelUp();
-                userRepository.save(user);
-            });
+        return userLevelUpItemWriter(null);
+    }
+
+    @Bean(JOB_NAME + "_userLevelUpItemWriter")
+    @StepScope
+    public ItemWriter<User> userLevelUpItemWriter(@Value("#{jobParameters[levelUpWriter]}") String levelUpWriter) {
+        return LevelUpWriterMode.of(levelUpWriter).writer(userRepository, dataSource);
     }
 
     private ItemProcessor<? super User, ? extends User> itemProcessor() {
@@ -178,13 +147,9 @@ public class MultiThreadUserConfiguration {
     }
 
     private ItemReader<? extends User> itemReader() throws Exception {
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-                .queryString("select u from User u")
-                .entityManagerFactory(entityManagerFactory)
-                .pageSize(1000)
-                .name(JOB_NAME + "_userItemReader")
-                .build();
-        itemReader.afterPropertiesSet();
+        ConcurrentKeysetItemReader<User> itemReader = new ConcurrentKeysetItemReader<>(entityManagerFactory, User.class);
+        itemReader.setWindowSize(1000);
+        itemReader.setName(JOB_NAME + "_userItemReader");
         return itemReader;
     }
 }
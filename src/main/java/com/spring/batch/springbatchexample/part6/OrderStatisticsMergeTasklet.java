@@ -0,0 +1,72 @@
+package com.spring.batch.springbatchexample.part6;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.repeat.RepeatStatus;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.stream.Stream;
+
+/**
+ * OrderStatisticsPartitioner 가 나눈 partition 의 part 파일을 날짜 순서대로 이어 붙여 월별 CSV 를 만든다.
+ * header 와 줄바꿈은 FlatFileItemWriter 와 같게 써서 단일 step 으로 만든 파일과 byte 단위로 같다.
+ * 월 파일은 임시 파일에 쓴 뒤 옮기므로 실패해도 반쯤 쓴 파일이 남지 않는다.
+ */
+public class OrderStatisticsMergeTasklet implements Tasklet {
+    private static final String HEADER = "total_amount, date";
+
+    private final YearMonth from;
+    private final YearMonth to;
+    private final OrderStatisticsPartitioner.Granularity granularity;
+    private final Path partDirectory;
+    private final Path outputDirectory;
+
+    public OrderStatisticsMergeTasklet(YearMonth from, YearMonth to, OrderStatisticsPartitioner.Granularity granularity,
+                                       Path partDirectory, Path outputDirectory) {
+        this.from = from;
+        this.to = to;
+        this.granularity = granularity;
+        this.partDirectory = partDirectory;
+        this.outputDirectory = outputDirectory;
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        Files.createDirectories(outputDirectory);
+        String lineSeparator = System.lineSeparator();
+
+        for (YearMonth yearMonth = from; !yearMonth.isAfter(to); yearMonth = yearMonth.plusMonths(1)) {
+            Path output = outputDirectory.resolve(yearMonth.getYear() + "년" + yearMonth.getMonthValue() + "월_일별_주문_금액.csv");
+            Path temporary = Files.createTempFile(outputDirectory, ".merge-", ".csv");
+
+            try (OutputStream outputStream = Files.newOutputStream(temporary)) {
+                outputStream.write((HEADER + lineSeparator).getBytes(StandardCharsets.UTF_8));
+                for (LocalDate[] range : OrderStatisticsPartitioner.ranges(yearMonth, granularity)) {
+                    Path partFile = OrderStatisticsPartitioner.partFile(partDirectory, range[0]);
+                    if (Files.exists(partFile)) {
+                        Files.copy(partFile, outputStream);
+                    }
+                }
+            }
+            Files.move(temporary, output, StandardCopyOption.REPLACE_EXISTING);
+            contribution.incrementWriteCount(1);
+        }
+
+        if (Files.isDirectory(partDirectory)) {
+            try (Stream<Path> partFiles = Files.list(partDirectory)) {
+                for (Path partFile : (Iterable<Path>) partFiles::iterator) {
+                    Files.delete(partFile);
+                }
+            }
+            Files.delete(partDirectory);
+        }
+        return RepeatStatus.FINISHED;
+    }
+}
@@ -0,0 +1,89 @@
+package com.spring.batch.springbatchexample.part6;
+
+import org.springframework.batch.core.partition.support.Partitioner;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 월별 주문 통계를 일 / 주 단위 partition 으로 나눈다. partition 은 월 경계를 넘지 않는다.
+ * 각 partition 에는 집계할 기간(startDate, endDate)과 결과를 쓸 part 파일 경로(partFile)를 넣는다.
+ */
+public class OrderStatisticsPartitioner implements Partitioner {
+
+    public enum Granularity {
+        DAY(1),
+        WEEK(7);
+
+        private final int days;
+
+        Granularity(int days) {
+            this.days = days;
+        }
+
+        public static Granularity of(String value) {
+            if (value == null || value.isBlank()) {
+                return DAY;
+            }
+            return Granularity.valueOf(value.trim().toUpperCase());
+        }
+    }
+
+    private final YearMonth from;
+    private final YearMonth to;
+    private final Granularity granularity;
+    private final Path partDirectory;
+
+    public OrderStatisticsPartitioner(YearMonth from, YearMonth to, Granularity granularity, Path partDirectory) {
+        this.from = from;
+        this.to = to;
+        this.granularity = granularity;
+        this.partDirectory = partDirectory;
+    }
+
+    @Override
+    public Map<String, ExecutionContext> partition(int gridSize) {
+        // partition 수는 기간과 단위로 정해지므로 gridSize 는 쓰지 않는다.
+        try {
+            Files.createDirectories(partDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        Map<String, ExecutionContext> result = new LinkedHashMap<>();
+        for (YearMonth yearMonth = from; !yearMonth.isAfter(to); yearMonth = yearMonth.plusMonths(1)) {
+            for (LocalDate[] range : ranges(yearMonth, granularity)) {
+                ExecutionContext value = new ExecutionContext();
+                value.putString("startDate", range[0].toString());
+                value.putString("endDate", range[1].toString());
+                value.putString("partFile", partFile(partDirectory, range[0]).toString());
+                result.put(range[0].toString(), value);
+            }
+        }
+        return result;
+    }
+
+    // 한 달을 날짜 순서대로 나눈 [시작일, 종료일] 목록
+    static List<LocalDate[]> ranges(YearMonth yearMonth, Granularity granularity) {
+        List<LocalDate[]> ranges = new ArrayList<>();
+        LocalDate endOfMonth = yearMonth.atEndOfMonth();
+        for (LocalDate start = yearMonth.atDay(1); !start.isAfter(endOfMonth); start = start.plusDays(granularity.days)) {
+            LocalDate end = start.plusDays(granularity.days - 1);
+            ranges.add(new LocalDate[]{start, end.isAfter(endOfMonth) ? endOfMonth : end});
+        }
+        return ranges;
+    }
+
+    static Path partFile(Path partDirectory, LocalDate startDate) {
+        return partDirectory.resolve(startDate + ".csv");
+    }
+}
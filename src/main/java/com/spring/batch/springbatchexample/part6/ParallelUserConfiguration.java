@@ -1,11 +1,17 @@
 package com.spring.batch.springbatchexample.part6;
 
+import com.spring.batch.springbatchexample.part3.StringBuilderLineAggregator;
+import com.spring.batch.springbatchexample.part4.KeysetPagingItemReader;
 import com.spring.batch.springbatchexample.part4.LevelUpJobExecutionListener;
+import com.spring.batch.springbatchexample.part4.LevelUpWriterMode;
 import com.spring.batch.springbatchexample.part4.SaveUserTasklet;
 import com.spring.batch.springbatchexample.part4.User;
 import com.spring.batch.springbatchexample.part4.UserRepository;
+import com.spring.batch.springbatchexample.part5.DailyOrderTotalsConfiguration;
 import com.spring.batch.springbatchexample.part5.JobParametersDecide;
 import com.spring.batch.springbatchexample.part5.OrderStatistics;
+import com.spring.batch.springbatchexample.part5.OrderStatisticsItemReaders;
+import io.micrometer.common.util.StringUtils;
 import jakarta.persistence.EntityManagerFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
@@ -18,22 +24,16 @@ import org.springframework.batch.core.job.flow.Flow;
 import org.springframework.batch.core.job.flow.support.SimpleFlow;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.partition.PartitionHandler;
-import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
+import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.core.repository.JobRepository;
 import org.springframework.batch.core.step.builder.StepBuilder;
 import org.springframework.batch.core.step.tasklet.TaskletStep;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.JpaPagingItemReader;
-import org.springframework.batch.item.database.Order;
-import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
 import org.springframework.batch.item.file.FlatFileItemWriter;
 import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -42,11 +42,7 @@ import org.springframework.core.task.TaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
-import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
 
 @Configuration
 @Slf4j
@@ -57,16 +53,22 @@ public class ParallelUserConfiguration {
     private final PlatformTransactionManager transactionManager;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
+    private final Step dailyOrderTotalsStep;
     private final String JOB_NAME = "ParallelUserJob";
     private final TaskExecutor taskExecutor;
+    private final boolean virtualThreads;
 
-    public ParallelUserConfiguration(UserRepository userRepository, JobRepository jobRepository, PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor) {
+    public ParallelUserConfiguration(UserRepository userRepository, JobRepository jobRepository, PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor,
+                                     @Value("${batch.executor.virtual-threads:false}") boolean virtualThreads,
+                                     @Qualifier(DailyOrderTotalsConfiguration.STEP_NAME) Step dailyOrderTotalsStep) {
         this.userRepository = userRepository;
         this.jobRepository = jobRepository;
         this.transactionManager = transactionManager;
         this.entityManagerFactory = entityManagerFactory;
         this.dataSource = dataSource;
+        this.dailyOrderTotalsStep = dailyOrderTotalsStep;
         this.taskExecutor = taskExecutor;
+        this.virtualThreads = virtualThreads;
     }
 
     @Bean(JOB_NAME)
@@ -107,7 +109,8 @@ public class ParallelUserConfiguration {
         return new FlowBuilder<SimpleFlow>(JOB_NAME + "_orderStatisticsFlow")
                 .start(new JobParametersDecide("date"))
                 .on(JobParametersDecide.CONTINUE.getName())
-                .to(this.orderStatisticsStep(date))
+                .to(this.dailyOrderTotalsStep)
+                .next(this.orderStatisticsStep(date))
                 .build();
 
     }
@@ -124,16 +127,9 @@ public class ParallelUserConfiguration {
         YearMonth yearMonth = YearMonth.parse(date);
         String fileName = yearMonth.getYear() + "년" + yearMonth.getMonthValue() + "월_일별_주문_금액.csv";
 
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] {"amount", "date"});
-
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
         FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
                 .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
+                .lineAggregator(new StringBuilderLineAggregator<>(OrderStatistics::appendCsvLine))
                 .name(JOB_NAME + "_orderStatisticsWriter")
                 .encoding("UTF-8")
                 .headerCallback(writer -> {
@@ -144,32 +140,8 @@ public class ParallelUserConfiguration {
         return itemWriter;
     }
 
-    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
-        YearMonth yearMonth = YearMonth.parse(date);
-
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("startDate", yearMonth.atDay(1));
-        parameters.put("endDate", yearMonth.atEndOfMonth());
-
-        Map<String, Order> sortKey = new HashMap<>();
-        sortKey.put("created_date", Order.ASCENDING);
-        JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
-                .dataSource(this.dataSource)
-                .rowMapper((resultSet, i) -> OrderStatistics.builder()
-                        .amount(resultSet.getString(1))
-                        .date(LocalDate.parse(resultSet.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
-                .pageSize(1000)
-                .name(JOB_NAME + "_orderStatisticsItemReader")
-                .selectClause("sum(amount), created_date")
-                .fromClause("orders")
-                .whereClause("created_date >= :startDate and created_date <= :endDate")
-                .groupClause("created_date")
-                .parameterValues(parameters)
-                .sortKeys(sortKey)
-                .build();
-        itemReader.afterPropertiesSet();
-        return itemReader;
+    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) {
+        return OrderStatisticsItemReaders.dailyTotals(this.dataSource, JOB_NAME + "_orderStatisticsItemReader", YearMonth.parse(date));
     }
 
 //    @Bean(JOB_NAME + "_saveUserStep")
@@ -192,11 +164,13 @@ public class ParallelUserConfiguration {
 
 
     private ItemWriter<? super User> itemWriter() {
-        return users->
-            users.forEach( user -> {
-                user.levelUp();
-                userRepository.save(user);
-            });
+        return userLevelUpItemWriter(null);
+    }
+
+    @Bean(JOB_NAME + "_userLevelUpItemWriter")
+    @StepScope
+    public ItemWriter<User> userLevelUpItemWriter(@Value("#{jobParameters[levelUpWriter]}") String levelUpWriter) {
+        return LevelUpWriterMode.of(levelUpWriter).writer(userRepository, dataSource);
     }
 
     private ItemProcessor<? super User, ? extends User> itemProcessor() {
@@ -212,38 +186,40 @@ public class ParallelUserConfiguration {
 
     @Bean(JOB_NAME + "_userItemReader")
     @StepScope
-    public JpaPagingItemReader<? extends User> itemReader(@Value("#{stepExecutionContext[minId]}") Long minId,
-                                                          @Value("#{stepExecutionContext[maxId]}")Long maxId) throws Exception {
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("minId", minId);
-        parameters.put("maxId", maxId);
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-                .parameterValues(parameters)
-                .queryString("select u from users u where u.id between :minId and :maxId")
-                .entityManagerFactory(entityManagerFactory)
-                .pageSize(1000)
-                .name(JOB_NAME + "_userItemReader")
-                .build();
-        itemReader.afterPropertiesSet();
+    public KeysetPagingItemReader<User> itemReader(@Value("#{stepExecutionContext[minId]}") Long minId,
+                                                   @Value("#{stepExecutionContext[maxId]}")Long maxId) throws Exception {
+        KeysetPagingItemReader<User> itemReader = new KeysetPagingItemReader<>(entityManagerFactory, User.class, User::getId);
+        itemReader.setMinId(minId);
+        itemReader.setMaxId(maxId);
+        itemReader.setPageSize(1000);
+        itemReader.setName(JOB_NAME + "_userItemReader");
         return itemReader;
     }
 
     @Bean(name = JOB_NAME + "_userLevelUpStep.manager")
     public Step userLevelUpManagerStep() throws Exception {
         return new StepBuilder(JOB_NAME + "_userLevelUpStep.manager", jobRepository)
-                .partitioner(JOB_NAME + "_userLevelUp", new UserLevelUpPartitioner(userRepository))
+                .partitioner(JOB_NAME + "_userLevelUp", userLevelUpPartitioner(null))
                 .step(userLevelUpStep())
-                .partitionHandler(taskExecutorPartitionHandler())
+                .partitionHandler(taskExecutorPartitionHandler(null, null))
                 .build();
     }
 
-    @Bean(name = JOB_NAME + "_taskExecutorPartitionHandler")
-    public PartitionHandler taskExecutorPartitionHandler() throws Exception {
-        TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
+    @Bean(JOB_NAME + "_userLevelUpPartitioner")
+    @StepScope
+    public Partitioner userLevelUpPartitioner(@Value("#{jobParameters[partitionBy]}") String partitionBy) {
+        return UserLevelUpPartitionMode.of(partitionBy).partitioner(userRepository, dataSource);
+    }
 
-        handler.setStep(userLevelUpStep());
-        handler.setTaskExecutor(taskExecutor);
-        handler.setGridSize(8);
-        return handler;
+    // partitionUserJob 과 같은 기준으로 grid size 와 동시 실행 수를 정한다. gridSize / concurrency job parameter 로 덮어쓴다.
+    @Bean(name = JOB_NAME + "_taskExecutorPartitionHandler")
+    @JobScope
+    public PartitionHandler taskExecutorPartitionHandler(@Value("#{jobParameters[gridSize]}") String gridSize,
+                                                         @Value("#{jobParameters[concurrency]}") String concurrency) throws Exception {
+        return new SizedPartitionHandler(JOB_NAME, userLevelUpStep(), userRepository::count,
+                BatchTaskExecutors.maximumPoolSize(dataSource), 1000,
+                StringUtils.isNotEmpty(gridSize) ? Integer.valueOf(gridSize) : null,
+                StringUtils.isNotEmpty(concurrency) ? Integer.valueOf(concurrency) : null,
+                virtualThreads);
     }
 }
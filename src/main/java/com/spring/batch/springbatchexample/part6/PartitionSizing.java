@@ -0,0 +1,60 @@
+package com.spring.batch.springbatchexample.part6;
+
+/**
+ * partition step 의 grid size 와 동시에 실행할 worker 수를 실행 환경에 맞춰 정한다.
+ * <ul>
+ *     <li>worker 수 : CPU 코어 수와 connection pool 크기 중 작은 쪽에 맞춘다.
+ *     worker 하나는 step transaction 과 reader 조회로 connection 을 최대 2개 쓰고, JobRepository 용으로 1개를 남긴다.</li>
+ *     <li>grid size : worker 당 2개의 partition 을 두어 늦게 끝나는 partition 을 다른 worker 가 메우게 하되,
+ *     partition 하나가 chunk 하나보다 작아지지 않게 한다.</li>
+ * </ul>
+ * job parameter 로 넘어온 값이 있으면 그 값을 그대로 쓴다.
+ */
+public final class PartitionSizing {
+    static final int CONNECTIONS_PER_WORKER = 2;
+    static final int RESERVED_CONNECTIONS = 1;
+    static final int PARTITIONS_PER_WORKER = 2;
+
+    private final int gridSize;
+    private final int concurrency;
+
+    private PartitionSizing(int gridSize, int concurrency) {
+        this.gridSize = gridSize;
+        this.concurrency = concurrency;
+    }
+
+    public static PartitionSizing of(int availableProcessors, int maximumPoolSize, long rowCount, int chunkSize,
+                                     Integer gridSizeOverride, Integer concurrencyOverride) {
+        int concurrency = concurrencyOverride != null
+                ? concurrencyOverride
+                : Math.max(1, Math.min(availableProcessors, (maximumPoolSize - RESERVED_CONNECTIONS) / CONNECTIONS_PER_WORKER));
+
+        int gridSize;
+        if (gridSizeOverride != null) {
+            gridSize = gridSizeOverride;
+        } else {
+            long chunks = Math.max(1, (rowCount + chunkSize - 1) / chunkSize);
+            gridSize = (int) Math.min((long) concurrency * PARTITIONS_PER_WORKER, chunks);
+        }
+
+        if (gridSize < 1 || concurrency < 1) {
+            throw new IllegalArgumentException("gridSize and concurrency must be positive. gridSize : " + gridSize + ", concurrency : " + concurrency);
+        }
+
+        // partition 보다 많은 worker 는 놀기만 한다.
+        return new PartitionSizing(gridSize, Math.min(concurrency, gridSize));
+    }
+
+    public int getGridSize() {
+        return gridSize;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    @Override
+    public String toString() {
+        return "PartitionSizing{gridSize=" + gridSize + ", concurrency=" + concurrency + "}";
+    }
+}
@@ -1,38 +1,44 @@
 package com.spring.batch.springbatchexample.part6;
 
+import com.spring.batch.springbatchexample.part3.StringBuilderLineAggregator;
+import com.spring.batch.springbatchexample.part4.KeysetPagingItemReader;
 import com.spring.batch.springbatchexample.part4.LevelUpJobExecutionListener;
+import com.spring.batch.springbatchexample.part4.LevelUpWriterMode;
 import com.spring.batch.springbatchexample.part4.SaveUserTasklet;
 import com.spring.batch.springbatchexample.part4.User;
 import com.spring.batch.springbatchexample.part4.UserRepository;
+import com.spring.batch.springbatchexample.part5.DailyOrderTotalsConfiguration;
+import com.spring.batch.springbatchexample.part5.GroupedCursorItemReader;
 import com.spring.batch.springbatchexample.part5.JobParametersDecide;
 import com.spring.batch.springbatchexample.part5.OrderStatistics;
+import com.spring.batch.springbatchexample.part5.OrderStatisticsItemReaders;
+import io.micrometer.common.util.StringUtils;
 import jakarta.persistence.EntityManagerFactory;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.batch.core.Job;
 import org.springframework.batch.core.Step;
 import org.springframework.batch.core.configuration.annotation.JobScope;
 import org.springframework.batch.core.configuration.annotation.StepScope;
+import org.springframework.batch.core.job.builder.FlowBuilder;
 import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.job.flow.Flow;
+import org.springframework.batch.core.job.flow.support.SimpleFlow;
 import org.springframework.batch.core.launch.support.RunIdIncrementer;
 import org.springframework.batch.core.partition.PartitionHandler;
+import org.springframework.batch.core.partition.support.Partitioner;
 import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
 import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.scope.context.JobSynchronizationManager;
 import org.springframework.batch.core.step.builder.StepBuilder;
 import org.springframework.batch.integration.async.AsyncItemProcessor;
 import org.springframework.batch.integration.async.AsyncItemWriter;
-import org.springframework.batch.item.ExecutionContext;
 import org.springframework.batch.item.ItemProcessor;
 import org.springframework.batch.item.ItemReader;
 import org.springframework.batch.item.ItemWriter;
-import org.springframework.batch.item.database.JdbcPagingItemReader;
-import org.springframework.batch.item.database.JpaPagingItemReader;
-import org.springframework.batch.item.database.Order;
-import org.springframework.batch.item.database.builder.JdbcPagingItemReaderBuilder;
-import org.springframework.batch.item.database.builder.JpaPagingItemReaderBuilder;
 import org.springframework.batch.item.file.FlatFileItemWriter;
 import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
-import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
-import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.batch.item.file.transform.LineAggregator;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -41,11 +47,9 @@ import org.springframework.core.task.TaskExecutor;
 import org.springframework.transaction.PlatformTransactionManager;
 
 import javax.sql.DataSource;
+import java.nio.file.Path;
 import java.time.LocalDate;
 import java.time.YearMonth;
-import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.Future;
 
 @Configuration
@@ -57,15 +61,24 @@ public class PartitionUserConfiguration {
     private final PlatformTransactionManager transactionManager;
     private final EntityManagerFactory entityManagerFactory;
     private final DataSource dataSource;
+    private final Step dailyOrderTotalsStep;
     private final String JOB_NAME = "partitionUserJob";
     private final TaskExecutor taskExecutor;
-    public PartitionUserConfiguration(UserRepository userRepository, JobRepository jobRepository, PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor) {
+    private final int stepConcurrency;
+    private final boolean virtualThreads;
+    public PartitionUserConfiguration(UserRepository userRepository, JobRepository jobRepository, PlatformTransactionManager transactionManager, EntityManagerFactory entityManagerFactory, DataSource dataSource, TaskExecutor taskExecutor,
+                                      @Value("${batch.executor.step-concurrency:8}") int stepConcurrency,
+                                      @Value("${batch.executor.virtual-threads:false}") boolean virtualThreads,
+                                      @Qualifier(DailyOrderTotalsConfiguration.STEP_NAME) Step dailyOrderTotalsStep) {
         this.userRepository = userRepository;
         this.jobRepository = jobRepository;
         this.transactionManager = transactionManager;
         this.entityManagerFactory = entityManagerFactory;
         this.dataSource = dataSource;
+        this.dailyOrderTotalsStep = dailyOrderTotalsStep;
         this.taskExecutor = taskExecutor;
+        this.stepConcurrency = stepConcurrency;
+        this.virtualThreads = virtualThreads;
     }
 
     @Bean(JOB_NAME)
@@ -77,11 +90,83 @@ public class PartitionUserConfiguration {
                 .listener(new LevelUpJobExecutionListener(userRepository))
                 .next(new JobParametersDecide("date"))
                 .on(JobParametersDecide.CONTINUE.getName())
-                .to(this.orderStatisticsStep(null))
+                .to(this.orderStatisticsFlow(null, null, null))
                 .build()
                 .build();
     }
 
+    // backfillTo 나 statisticsPartition 이 있으면 date ~ backfillTo 의 월들을 일 / 주 단위로 나눠 병렬로 집계한 뒤 월별 파일로 합친다.
+    @Bean(JOB_NAME + "_orderStatisticsFlow")
+    @JobScope
+    public Flow orderStatisticsFlow(@Value("#{jobParameters[date]}") String date,
+                                    @Value("#{jobParameters[backfillTo]}") String backfillTo,
+                                    @Value("#{jobParameters[statisticsPartition]}") String statisticsPartition) throws Exception {
+        if (StringUtils.isEmpty(backfillTo) && StringUtils.isEmpty(statisticsPartition)) {
+            return new FlowBuilder<SimpleFlow>(JOB_NAME + "_orderStatisticsFlow")
+                    .start(dailyOrderTotalsStep)
+                    .next(orderStatisticsStep(null))
+                    .build();
+        }
+
+        YearMonth from = YearMonth.parse(date);
+        YearMonth to = StringUtils.isNotEmpty(backfillTo) ? YearMonth.parse(backfillTo) : from;
+        OrderStatisticsPartitioner.Granularity granularity = OrderStatisticsPartitioner.Granularity.of(statisticsPartition);
+        // 재시작해도 이전 실행이 쓴 part 파일을 이어 쓰도록 job instance 단위로 디렉토리를 나눈다.
+        Path partDirectory = Path.of("output", ".parts",
+                String.valueOf(JobSynchronizationManager.getContext().getJobExecution().getJobInstance().getInstanceId()));
+
+        // 기간이 길어도 동시에 집계하는 partition 수는 stepConcurrency 와 connection pool 크기를 넘지 않는다.
+        int concurrency = Math.max(1, Math.min(stepConcurrency,
+                BatchTaskExecutors.maximumPoolSize(dataSource) - PartitionSizing.RESERVED_CONNECTIONS));
+
+        TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
+        handler.setStep(orderStatisticsWorkerStep());
+        handler.setTaskExecutor(new ConcurrencyLimitedTaskExecutor(JOB_NAME + "_orderStatistics", taskExecutor, concurrency));
+
+        Step managerStep = new StepBuilder(JOB_NAME + "_orderStatisticsStep.manager", jobRepository)
+                .partitioner(JOB_NAME + "_orderStatisticsWorkerStep", new OrderStatisticsPartitioner(from, to, granularity, partDirectory))
+                .partitionHandler(handler)
+                .build();
+        Step mergeStep = new StepBuilder(JOB_NAME + "_orderStatisticsMergeStep", jobRepository)
+                .tasklet(new OrderStatisticsMergeTasklet(from, to, granularity, partDirectory, Path.of("output")), transactionManager)
+                .build();
+
+        return new FlowBuilder<SimpleFlow>(JOB_NAME + "_orderStatisticsFlow")
+                .start(managerStep)
+                .next(mergeStep)
+                .build();
+    }
+
+    @Bean(JOB_NAME + "_orderStatisticsWorkerStep")
+    public Step orderStatisticsWorkerStep() {
+        return new StepBuilder(JOB_NAME + "_orderStatisticsWorkerStep", jobRepository)
+                .<OrderStatistics, OrderStatistics>chunk(1000, transactionManager)
+                .reader(orderStatisticsPartitionReader(null, null))
+                .writer(orderStatisticsPartitionWriter(null))
+                .build();
+    }
+
+    // partition 기간의 주문을 orders 에서 직접 집계한다. daily_order_totals 를 아직 채우지 않은 기간도 backfill 할 수 있다.
+    @Bean(JOB_NAME + "_orderStatisticsPartitionReader")
+    @StepScope
+    public GroupedCursorItemReader<OrderStatistics> orderStatisticsPartitionReader(@Value("#{stepExecutionContext[startDate]}") String startDate,
+                                                                                  @Value("#{stepExecutionContext[endDate]}") String endDate) {
+        return OrderStatisticsItemReaders.orders(this.dataSource, JOB_NAME + "_orderStatisticsPartitionReader",
+                LocalDate.parse(startDate), LocalDate.parse(endDate));
+    }
+
+    // header 없이 줄만 쓴다. header 는 OrderStatisticsMergeTasklet 이 월 파일에 한 번 쓴다.
+    @Bean(JOB_NAME + "_orderStatisticsPartitionWriter")
+    @StepScope
+    public FlatFileItemWriter<OrderStatistics> orderStatisticsPartitionWriter(@Value("#{stepExecutionContext[partFile]}") String partFile) {
+        return new FlatFileItemWriterBuilder<OrderStatistics>()
+                .resource(new FileSystemResource(partFile))
+                .lineAggregator(orderStatisticsLineAggregator())
+                .name(JOB_NAME + "_orderStatisticsPartitionWriter")
+                .encoding("UTF-8")
+                .build();
+    }
+
     @Bean(JOB_NAME + "_orderStatisticsStep")
     @JobScope
     public Step orderStatisticsStep(@Value("#{jobParameters[date]}") String date) throws Exception {
@@ -96,16 +181,9 @@ public class PartitionUserConfiguration {
         YearMonth yearMonth = YearMonth.parse(date);
         String fileName = yearMonth.getYear() + "년" + yearMonth.getMonthValue() + "월_일별_주문_금액.csv";
 
-        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
-        fieldExtractor.setNames(new String[] {"amount", "date"});
-
-        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
-        lineAggregator.setDelimiter(",");
-        lineAggregator.setFieldExtractor(fieldExtractor);
-
         FlatFileItemWriter<OrderStatistics> itemWriter = new FlatFileItemWriterBuilder<OrderStatistics>()
                 .resource(new FileSystemResource("output/" + fileName))
-                .lineAggregator(lineAggregator)
+                .lineAggregator(orderStatisticsLineAggregator())
                 .name(JOB_NAME + "_orderStatisticsWriter")
                 .encoding("UTF-8")
                 .headerCallback(writer -> {
@@ -116,32 +194,12 @@ public class PartitionUserConfiguration {
         return itemWriter;
     }
 
-    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) throws Exception {
-        YearMonth yearMonth = YearMonth.parse(date);
+    private LineAggregator<OrderStatistics> orderStatisticsLineAggregator() {
+        return new StringBuilderLineAggregator<>(OrderStatistics::appendCsvLine);
+    }
 
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("startDate", yearMonth.atDay(1));
-        parameters.put("endDate", yearMonth.atEndOfMonth());
-
-        Map<String, Order> sortKey = new HashMap<>();
-        sortKey.put("created_date", Order.ASCENDING);
-        JdbcPagingItemReader<OrderStatistics> itemReader = new JdbcPagingItemReaderBuilder<OrderStatistics>()
-                .dataSource(this.dataSource)
-                .rowMapper((resultSet, i) -> OrderStatistics.builder()
-                        .amount(resultSet.getString(1))
-                        .date(LocalDate.parse(resultSet.getString(2), DateTimeFormatter.ISO_DATE))
-                        .build())
-                .pageSize(1000)
-                .name(JOB_NAME + "_orderStatisticsItemReader")
-                .selectClause("sum(amount), created_date")
-                .fromClause("orders")
-                .whereClause("created_date >= :startDate and created_date <= :endDate")
-                .groupClause("created_date")
-                .parameterValues(parameters)
-                .sortKeys(sortKey)
-                .build();
-        itemReader.afterPropertiesSet();
-        return itemReader;
+    private ItemReader<? extends OrderStatistics> orderStatisticsItemReader(String date) {
+        return OrderStatisticsItemReaders.dailyTotals(this.dataSource, JOB_NAME + "_orderStatisticsItemReader", YearMonth.parse(date));
     }
 
     @Bean(JOB_NAME + "_saveUserStep")
@@ -164,28 +222,32 @@ public class PartitionUserConfiguration {
     @Bean(name = JOB_NAME + "_userLevelUpStep.manager")
     public Step userLevelUpManagerStep() throws Exception {
         return new StepBuilder(JOB_NAME + "_userLevelUpStep.manager", jobRepository)
-                .partitioner(JOB_NAME + "_userLevelUp", new UserLevelUpPartitioner(userRepository))
+                .partitioner(JOB_NAME + "_userLevelUp", userLevelUpPartitioner(null))
                 .step(userLevelUpStep())
-                .partitionHandler(taskExecutorPartitionHandler())
+                .partitionHandler(taskExecutorPartitionHandler(null, null))
                 .build();
     }
 
-    @Bean(name = JOB_NAME + "_taskExecutorPartitionHandler")
-    public PartitionHandler taskExecutorPartitionHandler() throws Exception {
-        TaskExecutorPartitionHandler handler = new TaskExecutorPartitionHandler();
+    @Bean(JOB_NAME + "_userLevelUpPartitioner")
+    @StepScope
+    public Partitioner userLevelUpPartitioner(@Value("#{jobParameters[partitionBy]}") String partitionBy) {
+        return UserLevelUpPartitionMode.of(partitionBy).partitioner(userRepository, dataSource);
+    }
 
-        handler.setStep(userLevelUpStep());
-        handler.setTaskExecutor(taskExecutor);
-        handler.setGridSize(8);
-        return handler;
+    @Bean(name = JOB_NAME + "_taskExecutorPartitionHandler")
+    @JobScope
+    public PartitionHandler taskExecutorPartitionHandler(@Value("#{jobParameters[gridSize]}") String gridSize,
+                                                         @Value("#{jobParameters[concurrency]}") String concurrency) throws Exception {
+        return new SizedPartitionHandler(JOB_NAME, userLevelUpStep(), userRepository::count,
+                BatchTaskExecutors.maximumPoolSize(dataSource), 1000,
+                StringUtils.isNotEmpty(gridSize) ? Integer.valueOf(gridSize) : null,
+                StringUtils.isNotEmpty(concurrency) ? Integer.valueOf(concurrency) : null,
+                virtualThreads);
     }
 
+
     private AsyncItemWriter< User> itemWriter() {
-        ItemWriter<User> itemWriter = users->
-                users.forEach( user -> {
-                    user.levelUp();
-                    userRepository.save(user);
-                });
+        ItemWriter<User> itemWriter = userLevelUpItemWriter(null);
 
         AsyncItemWriter<User> asyncItemWriter = new AsyncItemWriter<>();
         asyncItemWriter.setDelegate(itemWriter);
@@ -193,6 +255,12 @@ public class PartitionUserConfiguration {
         return asyncItemWriter;
     }
 
+    @Bean(JOB_NAME + "_userLevelUpItemWriter")
+    @StepScope
+    public ItemWriter<User> userLevelUpItemWriter(@Value("#{jobParameters[levelUpWriter]}") String levelUpWriter) {
+        return LevelUpWriterMode.of(levelUpWriter).writer(userRepository, dataSource);
+    }
+
     private AsyncItemProcessor<User, User> itemProcessor() {
         ItemProcessor<User, User> itemProcessor = user->{
             if(user.availableLevelUp()){
@@ -203,25 +271,20 @@ public class PartitionUserConfiguration {
 
         AsyncItemProcessor<User, User> asyncItemProcessor = new AsyncItemProcessor<>();
         asyncItemProcessor.setDelegate(itemProcessor);
-        asyncItemProcessor.setTaskExecutor(taskExecutor);
+        // 공용 pool 을 함께 쓰되 이 step 이 동시에 실행하는 작업 수는 stepConcurrency 로 제한한다.
+        asyncItemProcessor.setTaskExecutor(new ConcurrencyLimitedTaskExecutor(JOB_NAME + "_userLevelUpStep", taskExecutor, stepConcurrency));
         return asyncItemProcessor;
     }
 
     @Bean
     @StepScope
-    public JpaPagingItemReader<? extends User> itemReader(@Value("#{stepExecutionContext[minId]}") Long minId,
-                                                 @Value("#{stepExecutionContext[maxId]}")Long maxId) throws Exception {
-        Map<String, Object> parameters = new HashMap<>();
-        parameters.put("minId", minId);
-        parameters.put("maxId", maxId);
-        JpaPagingItemReader<User> itemReader = new JpaPagingItemReaderBuilder<User>()
-                .parameterValues(parameters)
-                .queryString("select u from users u where u.id between :minId and :maxId")
-                .entityManagerFactory(entityManagerFactory)
-                .pageSize(1000)
-                .name(JOB_NAME + "_userItemReader")
-                .build();
-        itemReader.afterPropertiesSet();
+    public KeysetPagingItemReader<User> itemReader(@Value("#{stepExecutionContext[minId]}") Long minId,
+                                                   @Value("#{stepExecutionContext[maxId]}")Long maxId) throws Exception {
+        KeysetPagingItemReader<User> itemReader = new KeysetPagingItemReader<>(entityManagerFactory, User.class, User::getId);
+        itemReader.setMinId(minId);
+        itemReader.setMaxId(maxId);
+        itemReader.setPageSize(1000);
+        itemReader.setName(JOB_NAME + "_userItemReader");
         return itemReader;
     }
 }
@@ -0,0 +1,251 @@
+package com.spring.batch.springbatchexample.part6;
+
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.step.tasklet.Tasklet;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemStream;
+import org.springframework.batch.item.ItemStreamException;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.core.task.TaskExecutor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * chunk 를 읽고, 처리하고, 쓰는 일을 단계마다 다른 thread 에서 겹쳐 실행하는 tasklet.
+ * <p>
+ * 공용 taskExecutor 의 thread 하나가 chunk N+2 를 읽고, 다른 thread 하나가 chunk N+1 을 처리하며,
+ * step thread 는 {@link #execute} 한 번(= step transaction 한 번) 안에서 chunk N 을 쓴다.
+ * 단계 사이의 queue 크기를 제한해 앞 단계가 너무 앞서 나가지 않게 한다.
+ * processor 는 step transaction 밖에서 실행되므로 transaction 에 기대지 않는 순수한 변환이어야 한다.
+ * <p>
+ * reader 는 이 tasklet 이 열고 닫으므로 step 에는 reader 대신 이 tasklet 을 stream 으로 등록한다.
+ * reader 는 chunk 를 다 읽은 직후의 상태를 chunk 와 함께 넘기고, {@link #update} 는 마지막으로 쓴 chunk 의 상태만 저장한다.
+ * 따라서 재시작은 마지막으로 commit 된 chunk 다음부터 시작한다.
+ * <p>
+ * reader thread 가 실패하거나 멈추면 step thread 는 기다리지 않고 실패한다.
+ */
+public class PipelinedChunkTasklet<I, O> implements Tasklet, ItemStream {
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(100);
+
+    private final ItemStreamReader<? extends I> itemReader;
+    private final ItemProcessor<? super I, ? extends O> itemProcessor;
+    private final ItemWriter<? super O> itemWriter;
+    private final TaskExecutor taskExecutor;
+    private final int chunkSize;
+    private final int queueCapacity;
+
+    private BlockingQueue<ReadChunk<I>> readQueue;
+    private BlockingQueue<ProcessedChunk<O>> processQueue;
+    private volatile boolean stopped;
+    private CountDownLatch readStageFinished;
+    private CountDownLatch processStageFinished;
+    private ExecutionContext writtenReaderState;
+
+    public PipelinedChunkTasklet(ItemStreamReader<? extends I> itemReader, ItemProcessor<? super I, ? extends O> itemProcessor,
+                                 ItemWriter<? super O> itemWriter, TaskExecutor taskExecutor, int chunkSize, int queueCapacity) {
+        this.itemReader = itemReader;
+        this.itemProcessor = itemProcessor;
+        this.itemWriter = itemWriter;
+        this.taskExecutor = taskExecutor;
+        this.chunkSize = chunkSize;
+        this.queueCapacity = queueCapacity;
+    }
+
+    @Override
+    public void open(ExecutionContext executionContext) throws ItemStreamException {
+        itemReader.open(executionContext);
+
+        this.readQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.processQueue = new ArrayBlockingQueue<>(queueCapacity);
+        this.stopped = false;
+        this.readStageFinished = new CountDownLatch(1);
+        this.processStageFinished = new CountDownLatch(1);
+        this.writtenReaderState = null;
+
+        Thread stepThread = Thread.currentThread();
+        try {
+            taskExecutor.execute(() -> readStage(stepThread));
+        } catch (RuntimeException e) {
+            readStageFinished.countDown();
+            processStageFinished.countDown();
+            throw e;
+        }
+        try {
+            taskExecutor.execute(() -> processStage(stepThread));
+        } catch (RuntimeException e) {
+            processStageFinished.countDown();
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public void update(ExecutionContext executionContext) throws ItemStreamException {
+        // 이 chunk 와 같은 transaction 으로 reader 상태가 저장되도록 step ExecutionContext 에 옮긴다.
+        if (writtenReaderState != null) {
+            for (Map.Entry<String, Object> entry : writtenReaderState.entrySet()) {
+                executionContext.put(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    // 두 단계의 thread 가 하던 chunk 를 끝내고 멈춘 뒤에 reader 를 닫는다.
+    @Override
+    public void close() throws ItemStreamException {
+        stopped = true;
+        if (readQueue != null) {
+            readQueue.clear();
+            processQueue.clear();
+        }
+        if (readStageFinished != null) {
+            try {
+                readStageFinished.await();
+                processStageFinished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        itemReader.close();
+    }
+
+    @Override
+    public RepeatStatus execute(StepContribution contribution, ChunkContext chunkContext) throws Exception {
+        ProcessedChunk<O> processed = take(processQueue, processStageFinished, "Process stage");
+        if (processed == null) {
+            throw new IllegalStateException("Tasklet is closed");
+        }
+        if (processed.error() != null) {
+            throw processed.error();
+        }
+
+        itemWriter.write(processed.items());
+
+        for (int i = 0; i < processed.readCount(); i++) {
+            contribution.incrementReadCount();
+        }
+        contribution.incrementFilterCount(processed.readCount() - processed.items().size());
+        contribution.incrementWriteCount(processed.items().size());
+        writtenReaderState = processed.readerState();
+
+        return processed.last() ? RepeatStatus.FINISHED : RepeatStatus.CONTINUABLE;
+    }
+
+    // 앞 단계가 chunk 를 넘기지 못하고 끝났으면 더 기다리지 않는다. close 된 뒤에는 null 을 돌려준다.
+    private <T> T take(BlockingQueue<T> queue, CountDownLatch producerFinished, String producer) throws InterruptedException {
+        while (!stopped) {
+            T chunk = queue.poll(POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+            if (chunk != null) {
+                return chunk;
+            }
+            if (producerFinished.getCount() == 0 && queue.isEmpty()) {
+                throw new IllegalStateException(producer + " stopped before handing over the last chunk");
+            }
+        }
+        return null;
+    }
+
+    private void readStage(Thread stepThread) {
+        try {
+            // pool 이 가득 차 제출한 step thread 에서 실행되면 queue 를 비울 thread 가 없으므로 바로 실패시킨다.
+            if (Thread.currentThread() == stepThread) {
+                readQueue.offer(new ReadChunk<>(List.of(), null, true,
+                        new IllegalStateException("No thread available for the read stage")));
+                return;
+            }
+
+            boolean last = false;
+            while (!last && !stopped) {
+                List<I> items = new ArrayList<>(chunkSize);
+                I item;
+                while (items.size() < chunkSize && (item = itemReader.read()) != null) {
+                    items.add(item);
+                }
+                last = items.size() < chunkSize;
+
+                ExecutionContext readerState = new ExecutionContext();
+                itemReader.update(readerState);
+                put(readQueue, new ReadChunk<>(items, readerState, last, null));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // 앞서 읽은 chunk 는 그대로 쓰고, 그 다음 execute 에서 실패한다.
+            try {
+                put(readQueue, new ReadChunk<>(List.of(), null, true, e));
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            readStageFinished.countDown();
+        }
+    }
+
+    private void processStage(Thread stepThread) {
+        try {
+            // step thread 에서 실행되면 쓰기 전에 처리할 thread 가 없다.
+            // 단, 읽기 단계가 이미 실패를 남기고 끝났다면 그 실패만 넘기면 되므로 기다릴 일이 없다.
+            if (Thread.currentThread() == stepThread && readStageFinished.getCount() != 0) {
+                processQueue.offer(new ProcessedChunk<>(0, new Chunk<>(), null, true,
+                        new IllegalStateException("No thread available for the process stage")));
+                return;
+            }
+
+            boolean last = false;
+            while (!last && !stopped) {
+                ReadChunk<I> read = take(readQueue, readStageFinished, "Read stage");
+                if (read == null) {
+                    return;
+                }
+                if (read.error() != null) {
+                    put(processQueue, new ProcessedChunk<>(0, new Chunk<>(), null, true,
+                            new IllegalStateException("Read stage failed", read.error())));
+                    return;
+                }
+
+                Chunk<O> items = new Chunk<>();
+                for (I item : read.items()) {
+                    O output = itemProcessor.process(item);
+                    if (output != null) {
+                        items.add(output);
+                    }
+                }
+                last = read.last();
+                put(processQueue, new ProcessedChunk<>(read.items().size(), items, read.readerState(), last, null));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            try {
+                put(processQueue, new ProcessedChunk<>(0, new Chunk<>(), null, true, e));
+            } catch (InterruptedException interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            processStageFinished.countDown();
+        }
+    }
+
+    // close 된 뒤에는 가득 찬 queue 를 기다리지 않고 끝낸다.
+    private <T> void put(BlockingQueue<T> queue, T chunk) throws InterruptedException {
+        while (!stopped && !queue.offer(chunk, POLL_INTERVAL.toMillis(), TimeUnit.MILLISECONDS)) {
+        }
+    }
+
+    private record ReadChunk<I>(List<I> items, ExecutionContext readerState, boolean last, Exception error) {
+    }
+
+    private record ProcessedChunk<O>(int readCount, Chunk<O> items, ExecutionContext readerState, boolean last, Exception error) {
+    }
+}
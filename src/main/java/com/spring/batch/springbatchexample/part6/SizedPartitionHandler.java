@@ -0,0 +1,58 @@
+package com.spring.batch.springbatchexample.part6;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.batch.core.Step;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.partition.StepExecutionSplitter;
+import org.springframework.batch.core.partition.support.TaskExecutorPartitionHandler;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.util.Collection;
+import java.util.function.LongSupplier;
+
+/**
+ * {@link PartitionSizing} 으로 grid size 와 동시에 실행할 partition 수를 정하는 partition handler.
+ * 행 수는 bean 을 만들 때가 아니라 manager step 이 partition 을 나누기 직전에 세므로 앞 step 이 넣은 데이터도 반영된다.
+ * 실행마다 선택된 값을 비교할 수 있도록 job ExecutionContext 에 partition.gridSize / partition.concurrency 로 남긴다.
+ */
+@Slf4j
+public class SizedPartitionHandler extends TaskExecutorPartitionHandler {
+    private final SimpleAsyncTaskExecutor partitionTaskExecutor;
+    private final LongSupplier rowCount;
+    private final int maximumPoolSize;
+    private final int chunkSize;
+    private final Integer gridSizeOverride;
+    private final Integer concurrencyOverride;
+
+    public SizedPartitionHandler(String name, Step step, LongSupplier rowCount, int maximumPoolSize, int chunkSize,
+                                 Integer gridSizeOverride, Integer concurrencyOverride, boolean virtualThreads) {
+        this.rowCount = rowCount;
+        this.maximumPoolSize = maximumPoolSize;
+        this.chunkSize = chunkSize;
+        this.gridSizeOverride = gridSizeOverride;
+        this.concurrencyOverride = concurrencyOverride;
+
+        // worker 수만큼만 partition 을 동시에 실행한다. 공용 taskExecutor 는 split flow 와 AsyncItemProcessor 가 쓴다.
+        this.partitionTaskExecutor = new SimpleAsyncTaskExecutor(name + "-partition-");
+        this.partitionTaskExecutor.setVirtualThreads(virtualThreads);
+
+        setStep(step);
+        setTaskExecutor(partitionTaskExecutor);
+    }
+
+    @Override
+    public Collection<StepExecution> handle(StepExecutionSplitter stepSplitter, StepExecution managerStepExecution) throws Exception {
+        PartitionSizing sizing = PartitionSizing.of(Runtime.getRuntime().availableProcessors(), maximumPoolSize,
+                rowCount.getAsLong(), chunkSize, gridSizeOverride, concurrencyOverride);
+        log.info("{} : {}", managerStepExecution.getStepName(), sizing);
+
+        ExecutionContext jobExecutionContext = managerStepExecution.getJobExecution().getExecutionContext();
+        jobExecutionContext.putInt("partition.gridSize", sizing.getGridSize());
+        jobExecutionContext.putInt("partition.concurrency", sizing.getConcurrency());
+
+        partitionTaskExecutor.setConcurrencyLimit(sizing.getConcurrency());
+        setGridSize(sizing.getGridSize());
+        return super.handle(stepSplitter, managerStepExecution);
+    }
+}
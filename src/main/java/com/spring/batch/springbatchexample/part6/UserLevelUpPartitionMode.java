@@ -0,0 +1,35 @@
+package com.spring.batch.springbatchexample.part6;
+
+import com.spring.batch.springbatchexample.part4.UserRepository;
+import io.micrometer.common.util.StringUtils;
+import org.springframework.batch.core.partition.support.Partitioner;
+
+import javax.sql.DataSource;
+
+/**
+ * 등급 partition 을 나누는 방법. 기본값은 min / max id 만 읽어 균등하게 자르는 RANGE 이다.
+ * id 에 빈 구간이 많으면 partitionBy=count(회원 수), 주문 수가 회원마다 크게 다르면 partitionBy=orders 로 바꾼다.
+ * 두 방법은 users / orders 전체를 window 함수로 한 번 더 읽는다.
+ */
+public enum UserLevelUpPartitionMode {
+    RANGE,
+    COUNT,
+    ORDERS;
+
+    public static UserLevelUpPartitionMode of(String value) {
+        if (StringUtils.isEmpty(value)) {
+            return RANGE;
+        }
+        return UserLevelUpPartitionMode.valueOf(value.toUpperCase());
+    }
+
+    public Partitioner partitioner(UserRepository userRepository, DataSource dataSource) {
+        if (this == COUNT) {
+            return new BalancedUserLevelUpPartitioner(dataSource, false);
+        }
+        if (this == ORDERS) {
+            return new BalancedUserLevelUpPartitioner(dataSource, true);
+        }
+        return new UserLevelUpPartitioner(userRepository);
+    }
+}
@@ -0,0 +1,140 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.SkipListener;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.ChunkContext;
+import org.springframework.batch.core.scope.context.StepContext;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.core.step.skip.SkipLimitExceededException;
+import org.springframework.batch.item.Chunk;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.IntStream;
+
+class BisectingItemWriterTest {
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+    private DataSourceTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table item (id int primary key)");
+        transactionManager = new DataSourceTransactionManager(dataSource);
+    }
+
+    @AfterEach
+    void tearDown() {
+        StepSynchronizationManager.close();
+        dataSource.shutdown();
+    }
+
+    @Test
+    void finds_bad_item_in_log_n_transactions() throws Exception {
+        List<Integer> written = new ArrayList<>();
+        int[] transactions = new int[1];
+        BisectingItemWriter<Integer> itemWriter = new BisectingItemWriter<>(chunk -> {
+            transactions[0]++;
+            // 실패하기 전에 쓴 row 는 savepoint 로 되돌려져야 한다.
+            for (Integer item : chunk) {
+                jdbcTemplate.update("insert into item (id) values (?)", item);
+            }
+            if (chunk.getItems().contains(5)) {
+                throw new NotFoundNameException();
+            }
+            written.addAll(chunk.getItems());
+        }, transactionManager);
+        itemWriter.setSkippableExceptions(NotFoundNameException.class);
+        itemWriter.setSkipLimit(3);
+
+        List<Integer> skipped = new ArrayList<>();
+        itemWriter.registerSkipListener(new SkipListener<Integer, Integer>() {
+            @Override
+            public void onSkipInWrite(Integer item, Throwable t) {
+                skipped.add(item);
+            }
+        });
+
+        Chunk<Integer> chunk = new Chunk<>(IntStream.range(0, 16).boxed().toList());
+        itemWriter.beforeChunk(null);
+        writeInChunkTransaction(itemWriter, chunk);
+
+        // 전체 1번 + 절반씩 4단계 x 2번
+        Assertions.assertThat(transactions[0]).isEqualTo(9);
+        Assertions.assertThat(written).hasSize(15).doesNotContain(5);
+        Assertions.assertThat(chunk.getItems()).hasSize(15);
+        Assertions.assertThat(skipped).isEmpty();
+        Assertions.assertThat(jdbcTemplate.queryForList("select id from item order by id", Integer.class))
+                .hasSize(15).doesNotContain(5);
+
+        itemWriter.afterChunk(null);
+        Assertions.assertThat(skipped).containsExactly(5);
+    }
+
+    @Test
+    void fails_when_skip_limit_is_exceeded() {
+        BisectingItemWriter<Integer> itemWriter = new BisectingItemWriter<>(chunk -> {
+            if (chunk.getItems().stream().anyMatch(item -> item % 2 == 0)) {
+                throw new NotFoundNameException();
+            }
+        }, transactionManager);
+        itemWriter.setSkippableExceptions(NotFoundNameException.class);
+        itemWriter.setSkipLimit(3);
+
+        itemWriter.beforeChunk(null);
+        Assertions.assertThatThrownBy(() -> writeInChunkTransaction(itemWriter, new Chunk<>(IntStream.range(0, 10).boxed().toList())))
+                .isInstanceOf(SkipLimitExceededException.class);
+    }
+
+    @Test
+    void write_skip_count_is_applied_before_commit_and_reverted_on_rollback() throws Exception {
+        StepExecution stepExecution = new StepExecution("bisectStep", new JobExecution(1L));
+        StepContext stepContext = StepSynchronizationManager.register(stepExecution);
+        ChunkContext chunkContext = new ChunkContext(stepContext);
+
+        BisectingItemWriter<Integer> itemWriter = new BisectingItemWriter<>(chunk -> {
+            if (chunk.getItems().contains(3)) {
+                throw new NotFoundNameException();
+            }
+        }, transactionManager);
+        itemWriter.setSkippableExceptions(NotFoundNameException.class);
+        itemWriter.setSkipLimit(3);
+
+        itemWriter.beforeChunk(chunkContext);
+        writeInChunkTransaction(itemWriter, new Chunk<>(IntStream.range(0, 8).boxed().toList()));
+        Assertions.assertThat(stepExecution.getWriteSkipCount()).isEqualTo(1);
+
+        // chunk 가 rollback 되면 skip 한 item 도 다시 처리되므로 skip 수를 되돌린다.
+        itemWriter.afterChunkError(chunkContext);
+        Assertions.assertThat(stepExecution.getWriteSkipCount()).isZero();
+    }
+
+    private void writeInChunkTransaction(BisectingItemWriter<Integer> itemWriter, Chunk<Integer> chunk) throws Exception {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            try {
+                itemWriter.write(chunk);
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+}
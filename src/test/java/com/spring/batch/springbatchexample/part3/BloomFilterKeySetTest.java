@@ -0,0 +1,38 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BloomFilterKeySetTest {
+
+    @Test
+    void contains_skips_exact_probe_for_new_keys() {
+        CountingKeySet exact = new CountingKeySet();
+        BloomFilterKeySet keySet = new BloomFilterKeySet(exact, 1_000, 0.01);
+        for (long fingerprint = 1; fingerprint <= 1_000; fingerprint++) {
+            keySet.add(DedupKeySet.fingerprint("key" + fingerprint));
+        }
+
+        for (long fingerprint = 1; fingerprint <= 1_000; fingerprint++) {
+            Assertions.assertThat(keySet.contains(DedupKeySet.fingerprint("key" + fingerprint))).isTrue();
+        }
+        exact.contains = 0;
+        for (long fingerprint = 1_001; fingerprint <= 11_000; fingerprint++) {
+            Assertions.assertThat(keySet.contains(DedupKeySet.fingerprint("key" + fingerprint))).isFalse();
+        }
+
+        // 처음 보는 key 는 오탐률(1%) 만큼만 exact 집합까지 간다.
+        Assertions.assertThat(exact.contains).isEqualTo(keySet.getFalsePositives()).isLessThan(300);
+        Assertions.assertThat(keySet.getDefinitelyNew()).isEqualTo(10_000 - exact.contains);
+    }
+
+    private static class CountingKeySet extends LongHashKeySet {
+        private long contains;
+
+        @Override
+        public synchronized boolean contains(long fingerprint) {
+            contains++;
+            return super.contains(fingerprint);
+        }
+    }
+}
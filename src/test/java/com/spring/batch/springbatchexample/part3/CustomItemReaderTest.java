@@ -0,0 +1,59 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+class CustomItemReaderTest {
+
+    @Test
+    void restart_from_saved_index() throws Exception {
+        List<Integer> items = IntStream.range(0, 10).boxed().toList();
+        ExecutionContext executionContext = new ExecutionContext();
+
+        CustomItemReader<Integer> itemReader = new CustomItemReader<>(items);
+        itemReader.open(executionContext);
+        itemReader.read();
+        itemReader.read();
+        itemReader.update(executionContext);
+
+        CustomItemReader<Integer> restarted = new CustomItemReader<>(items);
+        restarted.open(executionContext);
+        Assertions.assertThat(restarted.read()).isEqualTo(2);
+    }
+
+    @Test
+    void thread_safe_reader_hands_out_each_item_once() throws Exception {
+        List<Integer> items = IntStream.range(0, 200_000).boxed().toList();
+        CustomItemReader<Integer> itemReader = new CustomItemReader<>(items, true);
+        itemReader.open(new ExecutionContext());
+
+        Set<Integer> read = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(() -> {
+                Integer item;
+                while ((item = itemReader.read()) != null) {
+                    Assertions.assertThat(read.add(item)).isTrue();
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        Assertions.assertThat(read).hasSize(items.size());
+    }
+}
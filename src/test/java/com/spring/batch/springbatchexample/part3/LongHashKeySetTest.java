@@ -0,0 +1,42 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+class LongHashKeySetTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void behaves_like_hash_set() {
+        for (LongHashKeySet.Backing backing : LongHashKeySet.Backing.values()) {
+            LongHashKeySet keySet = new LongHashKeySet(backing, directory, 16);
+            Set<Long> expected = new HashSet<>();
+            Random random = new Random(backing.ordinal());
+
+            for (int i = 0; i < 20_000; i++) {
+                // 값 범위를 좁혀 충돌과 삭제 후 재삽입이 자주 일어나게 한다.
+                long fingerprint = random.nextInt(5_000) + 1;
+                if (random.nextInt(4) == 0) {
+                    keySet.remove(fingerprint);
+                    expected.remove(fingerprint);
+                } else {
+                    Assertions.assertThat(keySet.add(fingerprint)).isEqualTo(expected.add(fingerprint));
+                }
+            }
+
+            Assertions.assertThat(keySet.size()).isEqualTo(expected.size());
+            for (long fingerprint = 1; fingerprint <= 5_000; fingerprint++) {
+                Assertions.assertThat(keySet.add(fingerprint)).isEqualTo(!expected.contains(fingerprint));
+            }
+            keySet.close();
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ParallelCompositeItemWriterTest {
+
+    @Test
+    void sinks_run_in_parallel_after_transactional_delegate_on_caller_thread() throws Exception {
+        Set<Thread> transactionalThreads = ConcurrentHashMap.newKeySet();
+        AtomicBoolean transactionalWritten = new AtomicBoolean();
+        ItemWriter<Integer> transactional = chunk -> {
+            transactionalThreads.add(Thread.currentThread());
+            transactionalWritten.set(true);
+        };
+
+        // 세 sink 가 모두 시작해야 latch 가 열린다. 차례로 실행되면 첫 sink 가 기다리다 실패한다.
+        CountDownLatch allStarted = new CountDownLatch(3);
+        Set<Boolean> startedAfterTransactional = ConcurrentHashMap.newKeySet();
+        ItemWriter<Integer> sink = chunk -> {
+            startedAfterTransactional.add(transactionalWritten.get());
+            allStarted.countDown();
+            if (!allStarted.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("sinks did not overlap");
+            }
+        };
+
+        ParallelCompositeItemWriter<Integer> itemWriter = new ParallelCompositeItemWriter<>(
+                List.of(transactional), List.of(sink, sink, sink), new SimpleAsyncTaskExecutor());
+        itemWriter.write(new Chunk<>(List.of(1, 2, 3)));
+
+        Assertions.assertThat(transactionalThreads).containsExactly(Thread.currentThread());
+        Assertions.assertThat(startedAfterTransactional).containsExactly(true);
+    }
+
+    @Test
+    void failing_transactional_delegate_does_not_start_sinks() {
+        AtomicInteger sinkWrites = new AtomicInteger();
+        ItemWriter<Integer> failingTransactional = chunk -> {
+            throw new IllegalStateException("db down");
+        };
+        ParallelCompositeItemWriter<Integer> itemWriter = new ParallelCompositeItemWriter<>(
+                List.of(failingTransactional), List.of(chunk -> sinkWrites.incrementAndGet()), new SimpleAsyncTaskExecutor());
+
+        Assertions.assertThatThrownBy(() -> itemWriter.write(new Chunk<>(List.of(1))))
+                .hasMessage("db down");
+        Assertions.assertThat(sinkWrites).hasValue(0);
+    }
+
+    @Test
+    void failing_sink_fails_the_chunk() {
+        ItemWriter<Integer> failingSink = chunk -> {
+            throw new IllegalStateException("sink down");
+        };
+        ParallelCompositeItemWriter<Integer> itemWriter = new ParallelCompositeItemWriter<>(
+                List.of(chunk -> { }), List.of(failingSink), new SimpleAsyncTaskExecutor());
+
+        Assertions.assertThatThrownBy(() -> itemWriter.write(new Chunk<>(List.of(1))))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessage("sink down");
+    }
+}
@@ -0,0 +1,100 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemStreamReader;
+import org.springframework.batch.item.file.FlatFileItemReader;
+import org.springframework.batch.item.file.builder.FlatFileItemReaderBuilder;
+import org.springframework.batch.item.file.mapping.DefaultLineMapper;
+import org.springframework.batch.item.file.transform.DelimitedLineTokenizer;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * test-output.csv 와 같은 모양의 파일을 FlatFileItemReader 와 PersonFileItemReader 로 읽어 초당 읽은 건수를 비교한다.
+ * warm-up 후 여러 번 재서 가장 빠른 값을 남긴다. {@code ./gradlew benchmark} 로 실행한다.
+ */
+@Tag("benchmark")
+class PersonFileItemReaderBenchmarkTest {
+    private static final Logger log = LoggerFactory.getLogger(PersonFileItemReaderBenchmarkTest.class);
+    private static final int SIZE = 1_000_000;
+    private static final int WARM_UP = 2;
+    private static final int ITERATIONS = 5;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void read_throughput() throws Exception {
+        Path file = directory.resolve("person.csv");
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 1; i <= SIZE; i++) {
+                writer.write(i + ",test name" + i + ",test age,test address\n");
+            }
+        }
+        Resource resource = new FileSystemResource(file);
+
+        double flatFile = measure("FlatFileItemReader", () -> flatFileItemReader(resource));
+        double personFile = measure("PersonFileItemReader", () -> new PersonFileItemReader(resource));
+        log.info("PersonFileItemReader / FlatFileItemReader = {}", String.format("%.2f", personFile / flatFile));
+    }
+
+    private double measure(String name, ReaderFactory factory) throws Exception {
+        double best = 0;
+        for (int i = 0; i < WARM_UP + ITERATIONS; i++) {
+            ItemStreamReader<Person> itemReader = factory.create();
+            itemReader.open(new ExecutionContext());
+
+            long start = System.nanoTime();
+            int count = 0;
+            long idSum = 0;
+            Person person;
+            while ((person = itemReader.read()) != null) {
+                count++;
+                idSum += person.getId();
+            }
+            long elapsed = System.nanoTime() - start;
+            itemReader.close();
+
+            Assertions.assertThat(count).isEqualTo(SIZE);
+            Assertions.assertThat(idSum).isEqualTo((long) SIZE * (SIZE + 1) / 2);
+            if (i >= WARM_UP) {
+                best = Math.max(best, count * 1_000_000_000d / elapsed);
+            }
+        }
+        log.info("{} : {} rows/s", name, String.format("%.0f", best));
+        return best;
+    }
+
+    private FlatFileItemReader<Person> flatFileItemReader(Resource resource) throws Exception {
+        DefaultLineMapper<Person> lineMapper = new DefaultLineMapper<>();
+        DelimitedLineTokenizer tokenizer = new DelimitedLineTokenizer();
+        tokenizer.setNames("id", "name", "age", "address");
+        lineMapper.setLineTokenizer(tokenizer);
+        lineMapper.setFieldSetMapper(fieldSet -> new Person(fieldSet.readInt("id"), fieldSet.readString("name"),
+                fieldSet.readString("age"), fieldSet.readString("address")));
+
+        FlatFileItemReader<Person> itemReader = new FlatFileItemReaderBuilder<Person>()
+                .name("flatFileItemReader")
+                .encoding("UTF-8")
+                .resource(resource)
+                .lineMapper(lineMapper)
+                .build();
+        itemReader.afterPropertiesSet();
+        return itemReader;
+    }
+
+    private interface ReaderFactory {
+        ItemStreamReader<Person> create() throws Exception;
+    }
+}
@@ -0,0 +1,67 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class PersonFileItemReaderTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void read_across_buffer_boundaries() throws Exception {
+        Path file = write("id,name,age,address\r\n1, 홍길동 ,20,서울\r\n2,test name1,test age,test address\n\n3,a,b,c");
+        PersonFileItemReader itemReader = reader(file);
+        itemReader.open(new ExecutionContext());
+
+        Person first = itemReader.read();
+        Assertions.assertThat(first.getId()).isEqualTo(1);
+        Assertions.assertThat(first.getName()).isEqualTo("홍길동");
+        Assertions.assertThat(first.getAddress()).isEqualTo("서울");
+        Assertions.assertThat(itemReader.read().getAddress()).isEqualTo("test address");
+        Assertions.assertThat(itemReader.read().getId()).isEqualTo(3);
+        Assertions.assertThat(itemReader.read()).isNull();
+        itemReader.close();
+    }
+
+    @Test
+    void restart_from_saved_offset() throws Exception {
+        StringBuilder content = new StringBuilder("id,name,age,address\n");
+        for (int i = 1; i <= 10; i++) {
+            content.append(i).append(",test name").append(i).append(",test age,test address\n");
+        }
+        Path file = write(content.toString());
+
+        ExecutionContext executionContext = new ExecutionContext();
+        PersonFileItemReader itemReader = reader(file);
+        itemReader.open(executionContext);
+        for (int i = 0; i < 4; i++) {
+            itemReader.read();
+        }
+        itemReader.update(executionContext);
+        itemReader.close();
+
+        PersonFileItemReader restarted = reader(file);
+        restarted.open(executionContext);
+        Assertions.assertThat(restarted.read().getId()).isEqualTo(5);
+        restarted.close();
+    }
+
+    private PersonFileItemReader reader(Path file) {
+        PersonFileItemReader itemReader = new PersonFileItemReader(new FileSystemResource(file));
+        itemReader.setLinesToSkip(1);
+        itemReader.setBufferSize(8);
+        return itemReader;
+    }
+
+    private Path write(String content) throws Exception {
+        return Files.writeString(directory.resolve("person.csv"), content, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,48 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+class PersonFilePartitionerTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void partitions_cover_every_line_once() throws Exception {
+        StringBuilder content = new StringBuilder("id,name,age,address\n");
+        for (int i = 1; i <= 1000; i++) {
+            content.append(i).append(",이름").append(i).append(",test age,test address\n");
+        }
+        Path file = Files.writeString(directory.resolve("person.csv"), content.toString(), StandardCharsets.UTF_8);
+        FileSystemResource resource = new FileSystemResource(file);
+
+        Map<String, ExecutionContext> partitions = new PersonFilePartitioner(resource, 1).partition(7);
+
+        Assertions.assertThat(partitions).hasSize(7);
+        List<Integer> ids = new ArrayList<>();
+        for (ExecutionContext partition : partitions.values()) {
+            PersonFileItemReader itemReader = new PersonFileItemReader(resource);
+            itemReader.setStartOffset(partition.getLong("startOffset"));
+            itemReader.setEndOffset(partition.getLong("endOffset"));
+            itemReader.open(new ExecutionContext());
+            Person person;
+            while ((person = itemReader.read()) != null) {
+                ids.add(person.getId());
+            }
+            itemReader.close();
+        }
+        Assertions.assertThat(ids).hasSize(1000).doesNotHaveDuplicates();
+        Assertions.assertThat(ids).isSorted();
+    }
+}
@@ -0,0 +1,113 @@
+package com.spring.batch.springbatchexample.part3;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.assertj.core.api.Assertions;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.database.JpaItemWriter;
+import org.springframework.batch.item.database.builder.JpaItemWriterBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * ItemWriterConfiguration 의 jpaItemWriter 와 같은 방식으로 Person 을 저장하며 IDENTITY 와 pooled-id profile 을 비교한다.
+ * profile 마다 context 를 새로 띄워 초당 insert 건수와 준비한 JDBC statement 수를 잰다. {@code ./gradlew benchmark} 로 실행한다.
+ */
+@Tag("benchmark")
+class PersonInsertBenchmarkTest {
+    private static final Logger log = LoggerFactory.getLogger(PersonInsertBenchmarkTest.class);
+    private static final int SIZE = 50_000;
+    private static final int CHUNK_SIZE = 1_000;
+
+    @Test
+    void pooled_id_batches_inserts() {
+        Result identity = measure(null);
+        Result pooledId = measure(AutoIncrementIdRequiredListener.POOLED_ID_PROFILE);
+
+        log.info("IDENTITY : {} rows/s, {} statements", identity.rowsPerSecond(), identity.statements());
+        log.info("pooled-id : {} rows/s, {} statements", pooledId.rowsPerSecond(), pooledId.statements());
+        log.info("pooled-id / IDENTITY = {}", String.format("%.2f", (double) pooledId.rowsPerSecond() / identity.rowsPerSecond()));
+
+        // IDENTITY 는 row 마다 insert 하고, pooled-id 는 batch 와 sequence 조회만 준비한다.
+        Assertions.assertThat(identity.statements()).isGreaterThanOrEqualTo(SIZE);
+        Assertions.assertThat(pooledId.statements()).isLessThan(identity.statements() / 10);
+    }
+
+    private Result measure(String profile) {
+        SpringApplicationBuilder builder = new SpringApplicationBuilder(BenchmarkConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.batch.job.enabled=false",
+                        "spring.jpa.properties.hibernate.generate_statistics=true");
+        if (profile != null) {
+            builder.profiles(profile);
+        }
+
+        try (ConfigurableApplicationContext context = builder.run()) {
+            EntityManagerFactory entityManagerFactory = context.getBean(EntityManagerFactory.class);
+            TransactionTemplate transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+            JpaItemWriter<Person> itemWriter = new JpaItemWriterBuilder<Person>()
+                    .entityManagerFactory(entityManagerFactory)
+                    .usePersist(true)
+                    .build();
+            Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+            long before = countPerson(entityManagerFactory);
+            statistics.clear();
+
+            long start = System.nanoTime();
+            for (int offset = 0; offset < SIZE; offset += CHUNK_SIZE) {
+                Chunk<Person> chunk = new Chunk<>(createPersons(offset));
+                transactionTemplate.executeWithoutResult(status -> {
+                    try {
+                        itemWriter.write(chunk);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+            long statements = statistics.getPrepareStatementCount();
+
+            Assertions.assertThat(countPerson(entityManagerFactory) - before).isEqualTo(SIZE);
+            return new Result(SIZE * 1000L / elapsedMillis, statements);
+        }
+    }
+
+    private List<Person> createPersons(int offset) {
+        List<Person> persons = new ArrayList<>(CHUNK_SIZE);
+        for (int i = offset; i < offset + CHUNK_SIZE; i++) {
+            persons.add(new Person("test name" + i, "test age", "test address"));
+        }
+        return persons;
+    }
+
+    private long countPerson(EntityManagerFactory entityManagerFactory) {
+        EntityManager entityManager = entityManagerFactory.createEntityManager();
+        try {
+            return entityManager.createQuery("select count(p) from Person p", Long.class).getSingleResult();
+        } finally {
+            entityManager.close();
+        }
+    }
+
+    private record Result(long rowsPerSecond, long statements) {
+    }
+
+    @Configuration
+    @EnableAutoConfiguration
+    static class BenchmarkConfiguration {
+    }
+}
@@ -0,0 +1,78 @@
+package com.spring.batch.springbatchexample.part3;
+
+import com.spring.batch.springbatchexample.TestConfiguration;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.item.support.ListItemReader;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// writer 가 chunk 의 item 하나에서 실패해 step 이 item 하나씩 scan 해도 나머지 item 은 중복으로 걸러지지 않아야 한다.
+@SpringBatchTest
+@ContextConfiguration(classes = {SavePersonDedupJobTest.DedupJobConfiguration.class, TestConfiguration.class})
+class SavePersonDedupJobTest {
+    private static final List<String> WRITTEN = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Test
+    void skipped_write_keeps_the_rest_of_the_chunk() throws Exception {
+        WRITTEN.clear();
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob();
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(WRITTEN).containsExactlyInAnyOrder("a", "b", "d", "e");
+        StepExecution stepExecution = jobExecution.getStepExecutions().iterator().next();
+        Assertions.assertThat(stepExecution.getWriteSkipCount()).isEqualTo(1);
+    }
+
+    @Configuration
+    static class DedupJobConfiguration {
+
+        @Bean
+        public Job dedupJob(JobRepository jobRepository, PlatformTransactionManager transactionManager) {
+            List<Person> persons = List.of(person(1, "a"), person(2, "b"), person(3, "c"), person(4, "d"), person(5, "e"), person(6, "a"));
+            // c 를 쓰면 실패한다.
+            ItemWriter<Person> itemWriter = chunk -> {
+                if (chunk.getItems().stream().anyMatch(person -> "c".equals(person.getName()))) {
+                    throw new NotFoundNameException();
+                }
+                chunk.forEach(person -> WRITTEN.add(person.getName()));
+            };
+
+            return new JobBuilder("dedupJob", jobRepository)
+                    .start(new StepBuilder("dedupStep", jobRepository)
+                            .<Person, Person>chunk(10, transactionManager)
+                            .reader(new ListItemReader<>(persons))
+                            .processor(new SavePersonProcessor<>(false, Person::getName))
+                            .writer(itemWriter)
+                            .faultTolerant()
+                            .skip(NotFoundNameException.class)
+                            .skipLimit(3)
+                            .build())
+                    .build();
+        }
+
+        private static Person person(int id, String name) {
+            return new Person(id, name, "test age", "test address");
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.spring.batch.springbatchexample.part3;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+
+import java.nio.file.Path;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+class SavePersonProcessorTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void rolled_back_keys_are_processed_again() throws Exception {
+        SavePersonProcessor<Person> processor = new SavePersonProcessor<>(false, Person::getName);
+        processor.open(new ExecutionContext());
+
+        Assertions.assertThat(processor.process(person(1, "a"))).isNotNull();
+        write(processor, person(1, "a"));
+        processor.afterChunk(null);
+        Assertions.assertThat(processor.process(person(2, "b"))).isNotNull();
+        write(processor, person(2, "b"));
+        processor.afterChunkError(null);
+
+        Assertions.assertThat(processor.process(person(3, "b"))).isNotNull();
+        Assertions.assertThat(processor.process(person(4, "a"))).isNull();
+        processor.close();
+    }
+
+    @Test
+    void restart_restores_committed_keys_only() throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        SavePersonProcessor<Person> processor = processor(new BloomFilterKeySet(new LongHashKeySet(), 1_000, 0.01));
+        processor.open(executionContext);
+        processor.process(person(1, "a"));
+        write(processor, person(1, "a"));
+        processor.update(executionContext);
+        processor.afterChunk(null);
+        // commit 되지 않은 chunk 의 key 는 log 에 쓰였어도 재시작할 때 버린다.
+        processor.process(person(2, "b"));
+        write(processor, person(2, "b"));
+        processor.update(new ExecutionContext());
+        processor.close();
+
+        SavePersonProcessor<Person> restarted = processor(new LongHashKeySet());
+        restarted.open(executionContext);
+        Assertions.assertThat(restarted.process(person(3, "a"))).isNull();
+        Assertions.assertThat(restarted.process(person(4, "b"))).isNotNull();
+        restarted.close();
+    }
+
+    @Test
+    void rollback_in_one_partition_keeps_key_of_another() throws Exception {
+        SavePersonProcessor<Person> processor = new SavePersonProcessor<>(false, Person::getName);
+        processor.open(new ExecutionContext());
+        ExecutorService first = Executors.newSingleThreadExecutor();
+        ExecutorService second = Executors.newSingleThreadExecutor();
+
+        // 두 partition 이 같은 key 를 commit 전에 처리하면 둘 다 통과하고, 한쪽만 commit 된다.
+        Assertions.assertThat(run(first, () -> processor.process(person(1, "a")))).isNotNull();
+        Assertions.assertThat(run(second, () -> processor.process(person(2, "a")))).isNotNull();
+        run(first, () -> {
+            processor.afterChunkError(null);
+            return null;
+        });
+        run(second, () -> {
+            write(processor, person(2, "a"));
+            processor.afterChunk(null);
+            return null;
+        });
+
+        // rollback 된 partition 이 다시 처리할 때는 다른 partition 이 commit 한 key 로 걸러진다.
+        Assertions.assertThat(run(first, () -> processor.process(person(1, "a")))).isNull();
+        first.shutdown();
+        second.shutdown();
+        processor.close();
+    }
+
+    @Test
+    void processed_but_unwritten_keys_are_not_published() throws Exception {
+        SavePersonProcessor<Person> processor = new SavePersonProcessor<>(false, Person::getName);
+        processor.open(new ExecutionContext());
+
+        // step 의 scan 처럼 chunk 의 item 을 모두 처리하고 첫 item 만 쓴 transaction 이 commit 된다.
+        processor.beforeChunk(null);
+        processor.process(person(1, "a"));
+        processor.process(person(2, "b"));
+        write(processor, person(1, "a"));
+        processor.afterChunk(null);
+
+        // 다음 transaction 에서 아직 쓰지 않은 b 는 중복이 아니다.
+        processor.beforeChunk(null);
+        Assertions.assertThat(processor.process(person(2, "b"))).isNotNull();
+        Assertions.assertThat(processor.process(person(3, "a"))).isNull();
+        processor.close();
+    }
+
+    private void write(SavePersonProcessor<Person> processor, Person... persons) {
+        processor.afterWrite(new Chunk<>(persons));
+    }
+
+    private <V> V run(ExecutorService executor, Callable<V> task) throws Exception {
+        return executor.submit(task).get();
+    }
+
+    private SavePersonProcessor<Person> processor(DedupKeySet keySet) {
+        SavePersonProcessor<Person> processor = new SavePersonProcessor<>(false, Person::getName, keySet);
+        processor.setCheckpointDirectory(directory);
+        return processor;
+    }
+
+    private Person person(int id, String name) {
+        return new Person(id, name, "test age", "test address");
+    }
+}
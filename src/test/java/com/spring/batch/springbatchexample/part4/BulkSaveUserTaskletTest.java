@@ -0,0 +1,68 @@
+package com.spring.batch.springbatchexample.part4;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.List;
+
+class BulkSaveUserTaskletTest {
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table users (id bigint generated by default as identity primary key, username varchar(255), grade varchar(255), updated_date timestamp)");
+        jdbcTemplate.execute("create table orders (id bigint generated by default as identity primary key, item_name varchar(255), amount int, created_date date, user_id bigint)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    void each_order_belongs_to_the_user_of_the_same_row() throws Exception {
+        // 구간당 3명, batch 5건이면 마지막 batch 는 2건이다.
+        BulkSaveUserTasklet tasklet = new BulkSaveUserTasklet(dataSource, 3, 5);
+        StepExecution stepExecution = new StepExecution("saveUserStep", new JobExecution(1L));
+
+        long writeCount = 0;
+        RepeatStatus status;
+        do {
+            StepContribution contribution = stepExecution.createStepContribution();
+            status = tasklet.execute(contribution, null);
+            writeCount += contribution.getWriteCount();
+        } while (status.isContinuable());
+
+        Assertions.assertThat(jdbcTemplate.queryForObject("select count(*) from users", Long.class)).isEqualTo(12);
+        Assertions.assertThat(jdbcTemplate.queryForObject("select count(distinct user_id) from orders", Long.class)).isEqualTo(12);
+        Assertions.assertThat(writeCount).isEqualTo(24);
+
+        // generated key 가 insert 순서대로 돌아왔다면 id 순서의 주문 금액은 구간을 번갈아 가며 나온다.
+        List<Integer> amounts = jdbcTemplate.queryForList(
+                "select o.amount from users u join orders o on o.user_id = u.id order by u.id", Integer.class);
+        Assertions.assertThat(amounts).containsExactly(
+                1_000, 200_000, 300_000, 500_000,
+                1_000, 200_000, 300_000, 500_000,
+                1_000, 200_000, 300_000, 500_000);
+        Assertions.assertThat(jdbcTemplate.queryForObject(
+                "select count(*) from users u join orders o on o.user_id = u.id " +
+                        "where substring(u.username, 14) <> substring(o.item_name, 5)", Long.class)).isZero();
+    }
+}
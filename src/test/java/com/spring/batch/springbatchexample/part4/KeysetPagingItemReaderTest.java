@@ -0,0 +1,113 @@
+package com.spring.batch.springbatchexample.part4;
+
+import com.spring.batch.springbatchexample.part5.Orders;
+import jakarta.persistence.EntityManagerFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// reader 는 자기 EntityManager 로 읽으므로 테스트 데이터는 transaction 없이 commit 한다.
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(classes = KeysetPagingItemReaderTest.JpaConfiguration.class)
+class KeysetPagingItemReaderTest {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // id 사이에 빈 값이 있어도 페이지 경계가 id 기준으로 이어지는지 본다.
+        for (long id = 2; id <= 50; id += 2) {
+            jdbcTemplate.update("insert into users (id, username, grade) values (?, ?, 'NORMAL')", id, "user" + id);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from users");
+    }
+
+    @Test
+    void reads_every_user_once_across_pages() throws Exception {
+        KeysetPagingItemReader<User> itemReader = itemReader();
+        itemReader.open(new ExecutionContext());
+
+        List<Long> ids = readAll(itemReader);
+        itemReader.close();
+
+        Assertions.assertThat(ids).hasSize(25).doesNotHaveDuplicates().isSorted();
+        Assertions.assertThat(ids.get(0)).isEqualTo(2L);
+        Assertions.assertThat(ids.get(24)).isEqualTo(50L);
+    }
+
+    @Test
+    void restarts_after_last_id() throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        KeysetPagingItemReader<User> itemReader = itemReader();
+        itemReader.open(executionContext);
+        // 두 번째 페이지 중간까지 읽고 멈춘다.
+        for (int i = 0; i < 13; i++) {
+            itemReader.read();
+        }
+        itemReader.update(executionContext);
+        itemReader.close();
+
+        KeysetPagingItemReader<User> restarted = itemReader();
+        restarted.open(executionContext);
+        List<Long> ids = readAll(restarted);
+        restarted.close();
+
+        Assertions.assertThat(ids).hasSize(12);
+        Assertions.assertThat(ids.get(0)).isEqualTo(28L);
+    }
+
+    @Test
+    void reads_only_partition_range() throws Exception {
+        KeysetPagingItemReader<User> itemReader = itemReader();
+        itemReader.setMinId(10L);
+        itemReader.setMaxId(30L);
+        itemReader.open(new ExecutionContext());
+
+        List<Long> ids = readAll(itemReader);
+        itemReader.close();
+
+        Assertions.assertThat(ids).containsExactly(10L, 12L, 14L, 16L, 18L, 20L, 22L, 24L, 26L, 28L, 30L);
+    }
+
+    private KeysetPagingItemReader<User> itemReader() {
+        KeysetPagingItemReader<User> itemReader = new KeysetPagingItemReader<>(entityManagerFactory, User.class, User::getId);
+        itemReader.setPageSize(10);
+        return itemReader;
+    }
+
+    private List<Long> readAll(KeysetPagingItemReader<User> itemReader) throws Exception {
+        List<Long> ids = new ArrayList<>();
+        User user;
+        while ((user = itemReader.read()) != null) {
+            ids.add(user.getId());
+        }
+        return ids;
+    }
+
+    @Configuration
+    @EntityScan(basePackageClasses = {User.class, Orders.class})
+    static class JpaConfiguration {
+    }
+}
@@ -0,0 +1,64 @@
+package com.spring.batch.springbatchexample.part4;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.scope.context.StepSynchronizationManager;
+import org.springframework.batch.support.transaction.ResourcelessTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+class LevelUpCountsTest {
+
+    private final TransactionTemplate transactionTemplate = new TransactionTemplate(new ResourcelessTransactionManager());
+    private StepExecution stepExecution;
+
+    @BeforeEach
+    void setUp() {
+        stepExecution = new JobExecution(1L).createStepExecution("userLevelUpStep");
+        StepSynchronizationManager.register(stepExecution);
+    }
+
+    @AfterEach
+    void tearDown() {
+        StepSynchronizationManager.close();
+    }
+
+    @Test
+    void counts_are_added_inside_the_chunk_transaction() {
+        transactionTemplate.executeWithoutResult(status -> {
+            addLevelUps();
+            // step 이 commit 전에 ExecutionContext 를 저장할 때 이미 들어 있어야 한다.
+            Assertions.assertThat(count(User.Grade.SILVER)).isEqualTo(2);
+            Assertions.assertThat(count(User.Grade.GOLD)).isEqualTo(1);
+        });
+
+        Assertions.assertThat(count(User.Grade.SILVER)).isEqualTo(2);
+        Assertions.assertThat(count(User.Grade.GOLD)).isEqualTo(1);
+    }
+
+    @Test
+    void rolled_back_chunk_is_not_counted() {
+        transactionTemplate.executeWithoutResult(status -> addLevelUps());
+        transactionTemplate.executeWithoutResult(status -> {
+            addLevelUps();
+            status.setRollbackOnly();
+        });
+
+        Assertions.assertThat(count(User.Grade.SILVER)).isEqualTo(2);
+        Assertions.assertThat(count(User.Grade.GOLD)).isEqualTo(1);
+    }
+
+    private void addLevelUps() {
+        LevelUpCounts levelUpCounts = new LevelUpCounts();
+        levelUpCounts.add(User.Grade.SILVER, 2);
+        levelUpCounts.add(User.Grade.GOLD);
+        levelUpCounts.addToStepExecution();
+    }
+
+    private long count(User.Grade grade) {
+        return LevelUpCounts.sum(stepExecution.getJobExecution()).getOrDefault(grade, 0L);
+    }
+}
@@ -1,9 +1,12 @@
 package com.spring.batch.springbatchexample.part4;
 
 import com.spring.batch.springbatchexample.TestConfiguration;
+import com.spring.batch.springbatchexample.part5.DailyOrderTotalsConfiguration;
 import org.assertj.core.api.Assertions;
 import org.junit.jupiter.api.Test;
 import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.JobParameters;
+import org.springframework.batch.core.JobParametersBuilder;
 import org.springframework.batch.core.StepExecution;
 import org.springframework.batch.test.JobLauncherTestUtils;
 import org.springframework.batch.test.context.SpringBatchTest;
@@ -12,10 +15,12 @@ import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
 import org.springframework.test.context.ContextConfiguration;
 
 import java.time.LocalDate;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 @SpringBatchTest
 @DataJpaTest
-@ContextConfiguration(classes = {UserConfiguration.class, TestConfiguration.class} )
+@ContextConfiguration(classes = {UserConfiguration.class, DailyOrderTotalsConfiguration.class, TestConfiguration.class} )
 public class UserConfigurationTest {
 
     @Autowired
@@ -38,4 +43,50 @@ public class UserConfigurationTest {
 
         Assertions.assertThat(userRepository.count()).isEqualTo(400);
     }
+
+    @Test
+    void test_bulk_level_up_mode() throws Exception {
+        JobParameters jobParameters = new JobParametersBuilder()
+                .addString("levelUpMode", LevelUpMode.BULK.name())
+                .toJobParameters();
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters);
+
+        StepExecution stepExecution = jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals("userJob_userLevelUpStep"))
+                .findFirst()
+                .orElseThrow();
+
+        // SaveUserTasklet 은 금액 구간마다 10000 명을 만들고, 1000 원 구간을 뺀 세 구간이 등급을 올린다.
+        Assertions.assertThat(stepExecution.getReadCount()).isEqualTo(40_000);
+        Assertions.assertThat(stepExecution.getWriteCount()).isEqualTo(30_000);
+        Assertions.assertThat(stepExecution.getFilterCount()).isEqualTo(10_000);
+        Assertions.assertThat(userRepository.findAll().stream()
+                .collect(Collectors.groupingBy(User::getGrade, Collectors.counting())))
+                .containsOnly(
+                        Map.entry(User.Grade.NORMAL, 10_000L),
+                        Map.entry(User.Grade.SILVER, 10_000L),
+                        Map.entry(User.Grade.GOLD, 10_000L),
+                        Map.entry(User.Grade.VIP, 10_000L));
+    }
+
+    @Test
+    void test_projection_level_up_mode() throws Exception {
+        JobParameters jobParameters = new JobParametersBuilder()
+                .addString("levelUpMode", LevelUpMode.PROJECTION.name())
+                .toJobParameters();
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob(jobParameters);
+
+        StepExecution stepExecution = jobExecution.getStepExecutions().stream()
+                .filter(x -> x.getStepName().equals("userJob_userLevelUpStep"))
+                .findFirst()
+                .orElseThrow();
+
+        Assertions.assertThat(stepExecution.getReadCount()).isEqualTo(userRepository.count());
+        Assertions.assertThat(stepExecution.getWriteCount() + stepExecution.getFilterCount())
+                .isEqualTo(stepExecution.getReadCount());
+        // 집계 값으로 올린 등급이 entity 의 등급 규칙과 같으면 더 올릴 회원이 남지 않는다.
+        Assertions.assertThat(userRepository.findAll()).noneMatch(User::availableLevelUp);
+    }
 }
@@ -0,0 +1,88 @@
+package com.spring.batch.springbatchexample.part4;
+
+import com.spring.batch.springbatchexample.part5.Orders;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.Chunk;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Statement;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+class UserLevelUpItemWriterTest {
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table users (id bigint primary key, username varchar(255), grade varchar(255), updated_date timestamp)");
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    void updates_grade() throws Exception {
+        jdbcTemplate.update("insert into users (id, username, grade) values (1, 'user1', 'NORMAL')");
+
+        new UserLevelUpItemWriter(dataSource, true).write(new Chunk<>(user(1L, 200_000)));
+
+        Assertions.assertThat(jdbcTemplate.queryForObject("select grade from users where id = 1", String.class))
+                .isEqualTo(User.Grade.SILVER.name());
+    }
+
+    @Test
+    void optimistic_mode_fails_when_grade_was_changed() {
+        // 읽은 뒤에 다른 실행이 등급을 바꿔서 where grade = 'NORMAL' 에 걸리는 row 가 없다.
+        jdbcTemplate.update("insert into users (id, username, grade) values (1, 'user1', 'GOLD')");
+
+        Assertions.assertThatThrownBy(() -> new UserLevelUpItemWriter(dataSource, true).write(new Chunk<>(user(1L, 200_000))))
+                .isInstanceOf(OptimisticLockingFailureException.class);
+        Assertions.assertThat(jdbcTemplate.queryForObject("select grade from users where id = 1", String.class))
+                .isEqualTo(User.Grade.GOLD.name());
+    }
+
+    @Test
+    void optimistic_mode_accepts_success_no_info() throws Exception {
+        JdbcTemplate rewriteBatchedStatements = new JdbcTemplate(dataSource) {
+            @Override
+            public int[] batchUpdate(String sql, List<Object[]> batchArgs) {
+                int[] counts = new int[batchArgs.size()];
+                Arrays.fill(counts, Statement.SUCCESS_NO_INFO);
+                return counts;
+            }
+        };
+
+        new UserLevelUpItemWriter(rewriteBatchedStatements, true).write(new Chunk<>(user(1L, 200_000), user(2L, 300_000)));
+    }
+
+    private User user(Long id, int amount) {
+        User user = User.builder()
+                .username("user" + id)
+                .orders(List.of(Orders.builder()
+                        .amount(amount)
+                        .createdDate(LocalDate.of(2020, 11, 1))
+                        .itemName("item" + id)
+                        .build()))
+                .build();
+        ReflectionTestUtils.setField(user, "id", id);
+        return user;
+    }
+}
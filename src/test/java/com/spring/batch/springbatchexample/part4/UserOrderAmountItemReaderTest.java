@@ -0,0 +1,97 @@
+package com.spring.batch.springbatchexample.part4;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class UserOrderAmountItemReaderTest {
+
+    private EmbeddedDatabase dataSource;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table users (id bigint primary key, username varchar(255), grade varchar(255), updated_date timestamp)");
+        jdbcTemplate.execute("create table orders (id bigint auto_increment primary key, item_name varchar(255), amount int, created_date date, user_id bigint)");
+
+        // 홀수 회원은 주문이 두 건, 짝수 회원은 주문이 없다.
+        for (long id = 1; id <= 10; id++) {
+            jdbcTemplate.update("insert into users (id, username, grade) values (?, ?, 'NORMAL')", id, "user" + id);
+            if (id % 2 == 1) {
+                jdbcTemplate.update("insert into orders (item_name, amount, user_id) values ('item', 100000, ?)", id);
+                jdbcTemplate.update("insert into orders (item_name, amount, user_id) values ('item', 150000, ?)", id);
+            }
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    void reads_order_totals_per_user() throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        UserOrderAmountItemReader itemReader = itemReader();
+        itemReader.open(executionContext);
+
+        List<UserGradeCandidate> candidates = readAll(itemReader);
+        itemReader.update(executionContext);
+        itemReader.close();
+
+        Assertions.assertThat(candidates).extracting(UserGradeCandidate::id)
+                .containsExactly(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L);
+        Assertions.assertThat(candidates.get(0)).isEqualTo(new UserGradeCandidate(1L, User.Grade.NORMAL, 250_000));
+        Assertions.assertThat(candidates.get(1)).isEqualTo(new UserGradeCandidate(2L, User.Grade.NORMAL, 0));
+        // 페이지 3개(4, 4, 2건) x 쿼리 2번
+        Assertions.assertThat(executionContext.getLong("UserOrderAmountItemReader.queryCount")).isEqualTo(6);
+    }
+
+    @Test
+    void restarts_after_last_id() throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        UserOrderAmountItemReader itemReader = itemReader();
+        itemReader.open(executionContext);
+        for (int i = 0; i < 5; i++) {
+            itemReader.read();
+        }
+        itemReader.update(executionContext);
+        itemReader.close();
+
+        UserOrderAmountItemReader restarted = itemReader();
+        restarted.open(executionContext);
+        List<UserGradeCandidate> candidates = readAll(restarted);
+        restarted.close();
+
+        Assertions.assertThat(candidates).extracting(UserGradeCandidate::id)
+                .containsExactly(6L, 7L, 8L, 9L, 10L);
+    }
+
+    private UserOrderAmountItemReader itemReader() {
+        UserOrderAmountItemReader itemReader = new UserOrderAmountItemReader(dataSource);
+        itemReader.setPageSize(4);
+        return itemReader;
+    }
+
+    private List<UserGradeCandidate> readAll(UserOrderAmountItemReader itemReader) throws Exception {
+        List<UserGradeCandidate> candidates = new ArrayList<>();
+        UserGradeCandidate candidate;
+        while ((candidate = itemReader.read()) != null) {
+            candidates.add(candidate);
+        }
+        return candidates;
+    }
+}
@@ -0,0 +1,153 @@
+package com.spring.batch.springbatchexample.part5;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.List;
+
+class DailyOrderTotalsTaskletTest {
+    private static final YearMonth MARCH = YearMonth.of(2024, 3);
+    // 3월이 모두 확정된 뒤
+    private static final Clock CLOSED = clock(LocalDate.of(2024, 5, 1));
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table orders (id bigint primary key, item_name varchar(255), amount int, created_date date, user_id bigint)");
+        jdbcTemplate.execute("create table daily_order_totals (order_date date primary key, total_amount bigint, order_count bigint)");
+        jdbcTemplate.execute("create table order_totals_watermark (order_month varchar(7) primary key, final_date date)");
+
+        insertOrder(1, 1_000, LocalDate.of(2024, 3, 1));
+        insertOrder(2, 2_000, LocalDate.of(2024, 3, 1));
+        insertOrder(3, 5_000, LocalDate.of(2024, 3, 15));
+        insertOrder(4, 7_000, LocalDate.of(2024, 4, 1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    void computes_totals_of_each_day_in_range() throws Exception {
+        StepExecution stepExecution = run();
+
+        Assertions.assertThat(totals()).containsExactly("2024-03-01 3000 2", "2024-03-15 5000 1");
+        Assertions.assertThat(stepExecution.getWriteCount()).isEqualTo(2);
+    }
+
+    @Test
+    void second_run_over_closed_month_reads_no_orders() throws Exception {
+        run();
+
+        // orders 를 읽으면 실패하도록 테이블 이름을 바꾼다.
+        jdbcTemplate.execute("alter table orders rename to orders_moved");
+        StepExecution stepExecution = run();
+
+        Assertions.assertThat(stepExecution.getWriteCount()).isZero();
+        Assertions.assertThat(totals()).containsExactly("2024-03-01 3000 2", "2024-03-15 5000 1");
+    }
+
+    @Test
+    void open_month_folds_only_days_after_watermark() throws Exception {
+        // 3월 20일에는 16일까지만 확정된다.
+        Clock march20 = clock(LocalDate.of(2024, 3, 20));
+        run(new DailyOrderTotalsTasklet(dataSource, MARCH, 7, 3, false, march20), newStepExecution());
+        Assertions.assertThat(jdbcTemplate.queryForObject("select final_date from order_totals_watermark where order_month = '2024-03'", LocalDate.class))
+                .isEqualTo(LocalDate.of(2024, 3, 16));
+
+        // 확정된 날짜의 주문은 다시 읽지 않고, 그 뒤 날짜의 주문만 반영한다.
+        insertOrder(5, 500, LocalDate.of(2024, 3, 15));
+        insertOrder(6, 800, LocalDate.of(2024, 3, 18));
+        run(new DailyOrderTotalsTasklet(dataSource, MARCH, 7, 3, false, march20), newStepExecution());
+
+        Assertions.assertThat(totals()).containsExactly("2024-03-01 3000 2", "2024-03-15 5000 1", "2024-03-18 800 1");
+    }
+
+    @Test
+    void rebuild_reflects_late_updated_and_deleted_orders() throws Exception {
+        run();
+
+        // 확정된 날짜에 늦게 commit 된 주문, 금액이 바뀐 주문, 삭제된 주문
+        insertOrder(0, 500, LocalDate.of(2024, 3, 15));
+        jdbcTemplate.update("update orders set amount = 4000 where id = 2");
+        jdbcTemplate.update("delete from orders where id = 3");
+        run(new DailyOrderTotalsTasklet(dataSource, MARCH, 7, 3, true, CLOSED), newStepExecution());
+
+        Assertions.assertThat(totals()).containsExactly("2024-03-01 5000 2", "2024-03-15 500 1");
+    }
+
+    @Test
+    void restart_continues_from_next_date() throws Exception {
+        DailyOrderTotalsTasklet tasklet = tasklet();
+        StepExecution stepExecution = newStepExecution();
+        Assertions.assertThat(tasklet.execute(stepExecution.createStepContribution(), null)).isEqualTo(RepeatStatus.CONTINUABLE);
+        Assertions.assertThat(stepExecution.getExecutionContext().getString("dailyOrderTotals.nextDate")).isEqualTo("2024-03-08");
+
+        // 재시작한 step 은 같은 ExecutionContext 로 8일부터 계산한다.
+        jdbcTemplate.update("delete from daily_order_totals");
+        StepExecution restarted = new StepExecution("dailyOrderTotalsStep", new JobExecution(2L));
+        restarted.setExecutionContext(stepExecution.getExecutionContext());
+        run(tasklet, restarted);
+
+        Assertions.assertThat(jdbcTemplate.queryForList("select order_date from daily_order_totals", LocalDate.class))
+                .containsExactly(LocalDate.of(2024, 3, 15));
+    }
+
+    private StepExecution run() throws Exception {
+        StepExecution stepExecution = newStepExecution();
+        run(tasklet(), stepExecution);
+        return stepExecution;
+    }
+
+    private DailyOrderTotalsTasklet tasklet() {
+        return new DailyOrderTotalsTasklet(dataSource, MARCH, 7, 3, false, CLOSED);
+    }
+
+    private StepExecution newStepExecution() {
+        return new StepExecution("dailyOrderTotalsStep", new JobExecution(1L));
+    }
+
+    private static Clock clock(LocalDate today) {
+        return Clock.fixed(today.atStartOfDay(ZoneOffset.UTC).toInstant(), ZoneOffset.UTC);
+    }
+
+    private void run(DailyOrderTotalsTasklet tasklet, StepExecution stepExecution) throws Exception {
+        RepeatStatus status;
+        do {
+            StepContribution contribution = stepExecution.createStepContribution();
+            status = tasklet.execute(contribution, null);
+            stepExecution.apply(contribution);
+        } while (status.isContinuable());
+    }
+
+    private List<String> totals() {
+        return jdbcTemplate.query("select order_date, total_amount, order_count from daily_order_totals order by order_date",
+                (resultSet, i) -> resultSet.getObject(1, LocalDate.class) + " " + resultSet.getLong(2) + " " + resultSet.getLong(3));
+    }
+
+    private void insertOrder(long id, int amount, LocalDate createdDate) {
+        jdbcTemplate.update("insert into orders (id, item_name, amount, created_date, user_id) values (?, 'item', ?, ?, 1)", id, amount, createdDate);
+    }
+}
@@ -0,0 +1,108 @@
+package com.spring.batch.springbatchexample.part5;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+class GroupedCursorItemReaderTest {
+    private static final LocalDate START = LocalDate.of(2024, 3, 1);
+    private static final LocalDate END = LocalDate.of(2024, 3, 31);
+
+    private EmbeddedDatabase dataSource;
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table orders (id bigint primary key, item_name varchar(255), amount int, created_date date, user_id bigint)");
+
+        insertOrder(1, 1000, LocalDate.of(2024, 3, 1));
+        insertOrder(2, 2000, LocalDate.of(2024, 3, 1));
+        insertOrder(3, 3000, LocalDate.of(2024, 3, 2));
+        insertOrder(4, 4000, LocalDate.of(2024, 3, 3));
+        insertOrder(5, 5000, LocalDate.of(2024, 3, 4));
+        insertOrder(6, 6000, LocalDate.of(2024, 4, 1));
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    void reads_each_group_in_sort_key_order() throws Exception {
+        GroupedCursorItemReader<OrderStatistics> itemReader = itemReader();
+        itemReader.open(new ExecutionContext());
+        List<String> read = readAll(itemReader);
+        itemReader.close();
+
+        Assertions.assertThat(read).containsExactly("2024-03-01 3000", "2024-03-02 3000", "2024-03-03 4000", "2024-03-04 5000");
+    }
+
+    @Test
+    void restarts_after_last_read_key() throws Exception {
+        ExecutionContext executionContext = new ExecutionContext();
+        GroupedCursorItemReader<OrderStatistics> itemReader = itemReader();
+        itemReader.open(executionContext);
+        itemReader.read();
+        itemReader.read();
+        itemReader.update(executionContext);
+        itemReader.close();
+
+        // 재시작 전에 이미 읽은 날짜에 주문이 더해져도 그 날짜는 다시 읽지 않는다.
+        insertOrder(7, 9000, LocalDate.of(2024, 3, 2));
+
+        GroupedCursorItemReader<OrderStatistics> restarted = itemReader();
+        restarted.open(executionContext);
+        List<String> read = readAll(restarted);
+        restarted.close();
+
+        Assertions.assertThat(read).containsExactly("2024-03-03 4000", "2024-03-04 5000");
+    }
+
+    @Test
+    void restart_adds_key_predicate_before_group_by() {
+        GroupedCursorItemReader<OrderStatistics> itemReader = itemReader();
+
+        Assertions.assertThat(itemReader.sql(false)).isEqualTo(
+                "select sum(amount), created_date from orders " +
+                        "where (created_date >= ? and created_date <= ?) " +
+                        "group by created_date order by created_date");
+        Assertions.assertThat(itemReader.sql(true)).isEqualTo(
+                "select sum(amount), created_date from orders " +
+                        "where (created_date >= ? and created_date <= ?) and created_date > ? " +
+                        "group by created_date order by created_date");
+    }
+
+    private GroupedCursorItemReader<OrderStatistics> itemReader() {
+        return OrderStatisticsItemReaders.orders(dataSource, "orderStatisticsItemReader", START, END);
+    }
+
+    private List<String> readAll(GroupedCursorItemReader<OrderStatistics> itemReader) throws Exception {
+        List<String> read = new ArrayList<>();
+        OrderStatistics item;
+        while ((item = itemReader.read()) != null) {
+            read.add(item.getDate() + " " + item.getAmount());
+        }
+        return read;
+    }
+
+    private void insertOrder(long id, int amount, LocalDate createdDate) {
+        jdbcTemplate.update("insert into orders (id, item_name, amount, created_date, user_id) values (?, 'item', ?, ?, 1)",
+                id, amount, createdDate);
+    }
+}
@@ -0,0 +1,131 @@
+package com.spring.batch.springbatchexample.part6;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.batch.integration.async.AsyncItemProcessor;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import javax.sql.DataSource;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+
+/**
+ * AsyncUserConfiguration 처럼 AsyncItemProcessor 로 item 마다 JDBC 를 기다리는 작업을 실행하며
+ * platform thread pool 과 virtual thread executor 의 초당 처리 건수, 최대 thread 수, heap 사용량을 비교한다.
+ * executor 마다 context 를 새로 띄운다. virtual thread 는 Java 21 이상에서만 잰다. {@code ./gradlew benchmark} 로 실행한다.
+ */
+@Tag("benchmark")
+class AsyncProcessorExecutorBenchmarkTest {
+    private static final Logger log = LoggerFactory.getLogger(AsyncProcessorExecutorBenchmarkTest.class);
+    private static final int SIZE = 20_000;
+    private static final int CHUNK_SIZE = 1_000;
+    private static final long JDBC_LATENCY_MILLIS = 2;
+
+    @Test
+    void platform_threads_and_virtual_threads() throws Exception {
+        Result platformThreads = measure(false);
+        log.info("platform threads : {}", platformThreads);
+
+        if (Runtime.version().feature() < 21) {
+            log.info("virtual threads : skipped on Java {}", Runtime.version().feature());
+            return;
+        }
+        Result virtualThreads = measure(true);
+        log.info("virtual threads : {}", virtualThreads);
+        log.info("virtual / platform = {}", String.format("%.2f", (double) virtualThreads.itemsPerSecond() / platformThreads.itemsPerSecond()));
+    }
+
+    private Result measure(boolean virtualThreads) throws Exception {
+        try (ConfigurableApplicationContext context = new SpringApplicationBuilder(BenchmarkConfiguration.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.batch.job.enabled=false")
+                .run()) {
+            DataSource dataSource = context.getBean(DataSource.class);
+            JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+            // SpringBatchExampleApplication 의 taskExecutor 와 같은 설정으로 만든다.
+            TaskExecutor taskExecutor = virtualThreads
+                    ? BatchTaskExecutors.virtualThreads(BatchTaskExecutors.maximumPoolSize(dataSource))
+                    : BatchTaskExecutors.platformThreads(1000, new BackpressureRejectedExecutionHandler(
+                            BackpressureRejectedExecutionHandler.Policy.CALLER_RUNS, Duration.ofSeconds(60)));
+            try {
+                return process(taskExecutor, jdbcTemplate);
+            } finally {
+                if (taskExecutor instanceof ThreadPoolTaskExecutor threadPoolTaskExecutor) {
+                    threadPoolTaskExecutor.shutdown();
+                }
+            }
+        }
+    }
+
+    private Result process(TaskExecutor taskExecutor, JdbcTemplate jdbcTemplate) throws Exception {
+        AsyncItemProcessor<Long, Long> itemProcessor = new AsyncItemProcessor<>();
+        itemProcessor.setDelegate(item -> query(jdbcTemplate, item));
+        itemProcessor.setTaskExecutor(taskExecutor);
+
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        MemoryMXBean memoryMXBean = ManagementFactory.getMemoryMXBean();
+        System.gc();
+        threadMXBean.resetPeakThreadCount();
+        long heapBefore = memoryMXBean.getHeapMemoryUsage().getUsed();
+        long peakHeap = heapBefore;
+
+        long processed = 0;
+        long start = System.nanoTime();
+        for (long offset = 0; offset < SIZE; offset += CHUNK_SIZE) {
+            List<Future<Long>> futures = new ArrayList<>(CHUNK_SIZE);
+            for (long item = offset; item < offset + CHUNK_SIZE; item++) {
+                futures.add(itemProcessor.process(item));
+            }
+            for (Future<Long> future : futures) {
+                processed += future.get() != null ? 1 : 0;
+            }
+            peakHeap = Math.max(peakHeap, memoryMXBean.getHeapMemoryUsage().getUsed());
+        }
+        long elapsedMillis = Math.max(1, (System.nanoTime() - start) / 1_000_000);
+
+        Assertions.assertThat(processed).isEqualTo(SIZE);
+        return new Result(SIZE * 1000L / elapsedMillis, threadMXBean.getPeakThreadCount(), Math.max(0, peakHeap - heapBefore) / 1024);
+    }
+
+    // connection 을 잡은 채로 DB 응답을 기다리는 상황을 흉내낸다.
+    private Long query(JdbcTemplate jdbcTemplate, Long item) {
+        return jdbcTemplate.execute((ConnectionCallback<Long>) connection -> {
+            try {
+                Thread.sleep(JDBC_LATENCY_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            try (Statement statement = connection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("select " + item)) {
+                resultSet.next();
+                return resultSet.getLong(1);
+            }
+        });
+    }
+
+    private record Result(long itemsPerSecond, int peakThreads, long peakHeapKilobytes) {
+    }
+
+    @Configuration
+    @EnableAutoConfiguration
+    static class BenchmarkConfiguration {
+    }
+}
@@ -0,0 +1,105 @@
+package com.spring.batch.springbatchexample.part6;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+class BackpressureRejectedExecutionHandlerTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ThreadPoolExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    void caller_runs_is_counted_as_backpressure_not_rejection() {
+        BackpressureRejectedExecutionHandler handler = handler(BackpressureRejectedExecutionHandler.Policy.CALLER_RUNS, Duration.ofSeconds(1));
+        fillPool(handler);
+
+        AtomicReference<Thread> ranOn = new AtomicReference<>();
+        executor.execute(() -> ranOn.set(Thread.currentThread()));
+
+        Assertions.assertThat(ranOn.get()).isSameAs(Thread.currentThread());
+        Assertions.assertThat(handler.getBackpressureCount()).isEqualTo(1);
+        Assertions.assertThat(handler.getRejectedCount()).isZero();
+    }
+
+    @Test
+    void block_waits_for_queue_space() throws Exception {
+        BackpressureRejectedExecutionHandler handler = handler(BackpressureRejectedExecutionHandler.Policy.BLOCK, Duration.ofSeconds(10));
+        fillPool(handler);
+
+        // 잠시 뒤 worker 를 풀어 queue 에 자리를 만든다.
+        new Thread(() -> {
+            sleep(100);
+            release.countDown();
+        }).start();
+        CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(ran::countDown);
+
+        Assertions.assertThat(ran.await(5, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat(handler.getBackpressureCount()).isEqualTo(1);
+        Assertions.assertThat(handler.getRejectedCount()).isZero();
+    }
+
+    @Test
+    void block_rejects_after_timeout() {
+        BackpressureRejectedExecutionHandler handler = handler(BackpressureRejectedExecutionHandler.Policy.BLOCK, Duration.ofMillis(50));
+        fillPool(handler);
+
+        Assertions.assertThatThrownBy(() -> executor.execute(() -> { }))
+                .isInstanceOf(RejectedExecutionException.class);
+        Assertions.assertThat(handler.getRejectedCount()).isEqualTo(1);
+    }
+
+    @Test
+    void rejects_without_waiting_when_shut_down() {
+        BackpressureRejectedExecutionHandler handler = handler(BackpressureRejectedExecutionHandler.Policy.BLOCK, Duration.ofSeconds(10));
+        fillPool(handler);
+        executor.shutdown();
+
+        Assertions.assertThatThrownBy(() -> handler.rejectedExecution(() -> { }, executor))
+                .isInstanceOf(RejectedExecutionException.class);
+        Assertions.assertThat(handler.getBackpressureCount()).isZero();
+        Assertions.assertThat(handler.getRejectedCount()).isEqualTo(1);
+    }
+
+    private BackpressureRejectedExecutionHandler handler(BackpressureRejectedExecutionHandler.Policy policy, Duration blockTimeout) {
+        BackpressureRejectedExecutionHandler handler = new BackpressureRejectedExecutionHandler(policy, blockTimeout);
+        executor = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1), handler);
+        return handler;
+    }
+
+    // worker 하나는 release 를 기다리고 queue 한 칸은 찬 상태로 만든다.
+    private void fillPool(BackpressureRejectedExecutionHandler handler) {
+        executor.execute(() -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        executor.execute(() -> { });
+        Assertions.assertThat(handler.getBackpressureCount()).isZero();
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.spring.batch.springbatchexample.part6;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseType;
+
+import java.util.Map;
+
+class BalancedUserLevelUpPartitionerTest {
+
+    private EmbeddedDatabase dataSource;
+
+    @BeforeEach
+    void setUp() {
+        dataSource = new EmbeddedDatabaseBuilder()
+                .setType(EmbeddedDatabaseType.H2)
+                .generateUniqueName(true)
+                .build();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+        jdbcTemplate.execute("create table users (id bigint primary key, username varchar(255), grade varchar(255), updated_date timestamp)");
+        jdbcTemplate.execute("create table orders (id bigint auto_increment primary key, item_name varchar(255), amount int, created_date date, user_id bigint)");
+
+        // 회원 6명 중 마지막 회원만 주문이 5건이다.
+        for (long id = 1; id <= 6; id++) {
+            jdbcTemplate.update("insert into users (id, username, grade) values (?, ?, 'NORMAL')", id, "user" + id);
+        }
+        for (int i = 0; i < 5; i++) {
+            jdbcTemplate.update("insert into orders (item_name, amount, user_id) values ('item', 1000, 6)");
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        dataSource.shutdown();
+    }
+
+    @Test
+    void ntile_splits_by_user_count() {
+        Map<String, ExecutionContext> partitions = new BalancedUserLevelUpPartitioner(dataSource, false).partition(2);
+
+        Assertions.assertThat(partitions).hasSize(2);
+        assertRange(partitions.get("partition0"), 1, 3);
+        assertRange(partitions.get("partition1"), 4, 6);
+    }
+
+    @Test
+    void cumulative_weight_puts_heavy_user_alone() {
+        // 가중치(회원 1 + 주문 수)는 1, 1, 1, 1, 1, 6 이고 합은 11 이다.
+        Map<String, ExecutionContext> partitions = new BalancedUserLevelUpPartitioner(dataSource, true).partition(2);
+
+        Assertions.assertThat(partitions).hasSize(2);
+        assertRange(partitions.get("partition0"), 1, 5);
+        assertRange(partitions.get("partition1"), 6, 6);
+    }
+
+    @Test
+    void coefficient_of_variation() {
+        Assertions.assertThat(BalancedUserLevelUpPartitioner.coefficientOfVariation(new long[]{5, 5, 5})).isZero();
+        Assertions.assertThat(BalancedUserLevelUpPartitioner.coefficientOfVariation(new long[]{5, 6})).isCloseTo(1 / 11.0, Assertions.within(1e-9));
+    }
+
+    private void assertRange(ExecutionContext executionContext, long minId, long maxId) {
+        Assertions.assertThat(executionContext.getLong("minId")).isEqualTo(minId);
+        Assertions.assertThat(executionContext.getLong("maxId")).isEqualTo(maxId);
+    }
+}
@@ -0,0 +1,77 @@
+package com.spring.batch.springbatchexample.part6;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+
+import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ConcurrencyLimitedTaskExecutorTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @BeforeEach
+    void setUp() {
+        Metrics.addRegistry(meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.removeRegistry(meterRegistry);
+    }
+
+    @Test
+    void runs_at_most_limit_tasks_at_once() throws Exception {
+        ConcurrencyLimitedTaskExecutor executor = new ConcurrencyLimitedTaskExecutor("limitTest", new SimpleAsyncTaskExecutor(), 2);
+
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(10);
+        for (int i = 0; i < 10; i++) {
+            executor.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                done.countDown();
+            });
+        }
+
+        Assertions.assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat(maxRunning.get()).isEqualTo(2);
+    }
+
+    @Test
+    void registers_gauges_once_per_name_and_follows_latest_instance() throws Exception {
+        new ConcurrencyLimitedTaskExecutor("gaugeTest", new SimpleAsyncTaskExecutor(), 2);
+        ConcurrencyLimitedTaskExecutor latest = new ConcurrencyLimitedTaskExecutor("gaugeTest", new SimpleAsyncTaskExecutor(), 2);
+
+        Collection<Gauge> gauges = meterRegistry.find("batch.executor.active").tag("executor", "gaugeTest").gauges();
+        Assertions.assertThat(gauges).hasSize(1);
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        latest.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Assertions.assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+        Assertions.assertThat(gauges.iterator().next().value()).isEqualTo(1.0);
+        release.countDown();
+    }
+}
@@ -0,0 +1,81 @@
+package com.spring.batch.springbatchexample.part6;
+
+import com.spring.batch.springbatchexample.TestConfiguration;
+import com.spring.batch.springbatchexample.part4.User;
+import jakarta.persistence.EntityManagerFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.BatchStatus;
+import org.springframework.batch.core.Job;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.core.job.builder.JobBuilder;
+import org.springframework.batch.core.repository.JobRepository;
+import org.springframework.batch.core.step.builder.StepBuilder;
+import org.springframework.batch.test.JobLauncherTestUtils;
+import org.springframework.batch.test.context.SpringBatchTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.LongStream;
+
+// 구간 크기와 chunk 크기가 달라 한 thread 가 먼저 끝나도 다른 thread 가 읽어 둔 item 은 모두 쓰여야 한다.
+@SpringBatchTest
+@ContextConfiguration(classes = {ConcurrentKeysetItemReaderStepTest.MultiThreadStepConfiguration.class, TestConfiguration.class})
+class ConcurrentKeysetItemReaderStepTest {
+    private static final List<Long> WRITTEN = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    private JobLauncherTestUtils jobLauncherTestUtils;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from users");
+    }
+
+    @Test
+    void multi_thread_step_writes_every_user_once() throws Exception {
+        WRITTEN.clear();
+        LongStream.rangeClosed(1, 100).forEach(id ->
+                jdbcTemplate.update("insert into users (id, username, grade) values (?, ?, 'NORMAL')", id, "user" + id));
+
+        JobExecution jobExecution = jobLauncherTestUtils.launchJob();
+
+        Assertions.assertThat(jobExecution.getStatus()).isEqualTo(BatchStatus.COMPLETED);
+        Assertions.assertThat(WRITTEN).doesNotHaveDuplicates()
+                .containsExactlyInAnyOrderElementsOf(LongStream.rangeClosed(1, 100).boxed().toList());
+        StepExecution stepExecution = jobExecution.getStepExecutions().iterator().next();
+        Assertions.assertThat(stepExecution.getWriteCount()).isEqualTo(100);
+    }
+
+    @Configuration
+    static class MultiThreadStepConfiguration {
+
+        @Bean
+        public Job concurrentKeysetJob(JobRepository jobRepository, PlatformTransactionManager transactionManager,
+                                       EntityManagerFactory entityManagerFactory) {
+            ConcurrentKeysetItemReader<User> itemReader = new ConcurrentKeysetItemReader<>(entityManagerFactory, User.class);
+            itemReader.setWindowSize(7);
+
+            return new JobBuilder("concurrentKeysetJob", jobRepository)
+                    .start(new StepBuilder("concurrentKeysetStep", jobRepository)
+                            .<User, User>chunk(3, transactionManager)
+                            .reader(itemReader)
+                            .writer(chunk -> chunk.forEach(user -> WRITTEN.add(user.getId())))
+                            .taskExecutor(new SimpleAsyncTaskExecutor())
+                            .build())
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.spring.batch.springbatchexample.part6;
+
+import com.spring.batch.springbatchexample.part4.User;
+import com.spring.batch.springbatchexample.part5.Orders;
+import jakarta.persistence.EntityManagerFactory;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// reader 는 thread 마다 자기 EntityManager 로 읽으므로 테스트 데이터는 transaction 없이 commit 한다.
+@DataJpaTest
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ContextConfiguration(classes = ConcurrentKeysetItemReaderTest.JpaConfiguration.class)
+class ConcurrentKeysetItemReaderTest {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @AfterEach
+    void tearDown() {
+        jdbcTemplate.update("delete from users");
+    }
+
+    @Test
+    void threads_read_each_user_once_across_sparse_ids() throws Exception {
+        // id 가 두 덩어리로 멀리 떨어져 있어도 구간은 존재하는 id 로만 채운다.
+        insertUsers(1, 20, 1);
+        insertUsers(1_000_001, 1_000_020, 1);
+
+        ExecutionContext executionContext = new ExecutionContext();
+        ConcurrentKeysetItemReader<User> itemReader = itemReader();
+        itemReader.open(executionContext);
+
+        Set<Long> read = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(() -> {
+                User user;
+                int count = 0;
+                while ((user = itemReader.read()) != null) {
+                    Assertions.assertThat(read.add(user.getId())).isTrue();
+                    // chunk 3건마다 commit 한다.
+                    if (++count % 3 == 0) {
+                        itemReader.afterChunk(null);
+                    }
+                }
+                itemReader.afterChunk(null);
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        itemReader.update(executionContext);
+        itemReader.close();
+
+        Assertions.assertThat(read).hasSize(40);
+
+        // 모두 commit 됐으므로 재시작하면 더 읽을 것이 없다.
+        ConcurrentKeysetItemReader<User> restarted = itemReader();
+        restarted.open(executionContext);
+        Assertions.assertThat(restarted.read()).isNull();
+        restarted.close();
+    }
+
+    @Test
+    void restarts_from_lowest_uncommitted_window() throws Exception {
+        insertUsers(2, 80, 2);
+
+        ExecutionContext executionContext = new ExecutionContext();
+        ConcurrentKeysetItemReader<User> itemReader = itemReader();
+        itemReader.open(executionContext);
+
+        ExecutorService first = Executors.newSingleThreadExecutor();
+        ExecutorService second = Executors.newSingleThreadExecutor();
+        // 첫 thread 는 (, 10], 두 번째 thread 는 (10, 20] 구간을 차지한다.
+        Assertions.assertThat(run(first, () -> readIds(itemReader, 5))).containsExactly(2L, 4L, 6L, 8L, 10L);
+        Assertions.assertThat(run(second, () -> readIds(itemReader, 5))).containsExactly(12L, 14L, 16L, 18L, 20L);
+
+        // 첫 thread 의 chunk 는 commit 되고, 두 번째 thread 의 chunk 는 rollback 된다.
+        run(first, () -> {
+            readIds(itemReader, 1);
+            itemReader.afterChunk(null);
+            return null;
+        });
+        run(second, () -> {
+            readIds(itemReader, 1);
+            itemReader.afterChunkError(null);
+            return null;
+        });
+        first.shutdown();
+        second.shutdown();
+
+        itemReader.update(executionContext);
+        itemReader.close();
+
+        // rollback 된 (10, 20] 구간부터 다시 읽는다. 그 위의 구간은 commit 여부와 관계없이 다시 읽는다.
+        ConcurrentKeysetItemReader<User> restarted = itemReader();
+        restarted.open(executionContext);
+        List<Long> ids = readIds(restarted, Integer.MAX_VALUE);
+        restarted.close();
+
+        Assertions.assertThat(ids).hasSize(35).doesNotHaveDuplicates();
+        Assertions.assertThat(ids.get(0)).isEqualTo(12L);
+    }
+
+    private ConcurrentKeysetItemReader<User> itemReader() {
+        ConcurrentKeysetItemReader<User> itemReader = new ConcurrentKeysetItemReader<>(entityManagerFactory, User.class);
+        itemReader.setWindowSize(5);
+        return itemReader;
+    }
+
+    private void insertUsers(long from, long to, long step) {
+        for (long id = from; id <= to; id += step) {
+            jdbcTemplate.update("insert into users (id, username, grade) values (?, ?, 'NORMAL')", id, "user" + id);
+        }
+    }
+
+    private List<Long> readIds(ConcurrentKeysetItemReader<User> itemReader, int limit) throws InterruptedException {
+        List<Long> ids = new ArrayList<>();
+        User user;
+        while (ids.size() < limit && (user = itemReader.read()) != null) {
+            ids.add(user.getId());
+        }
+        return ids;
+    }
+
+    private <V> V run(ExecutorService executor, Callable<V> task) throws Exception {
+        return executor.submit(task).get();
+    }
+
+    @Configuration
+    @EntityScan(basePackageClasses = {User.class, Orders.class})
+    static class JpaConfiguration {
+    }
+}
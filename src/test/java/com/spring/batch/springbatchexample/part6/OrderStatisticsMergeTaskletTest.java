@@ -0,0 +1,82 @@
+package com.spring.batch.springbatchexample.part6;
+
+import com.spring.batch.springbatchexample.part5.OrderStatistics;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.Chunk;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.file.FlatFileItemWriter;
+import org.springframework.batch.item.file.builder.FlatFileItemWriterBuilder;
+import org.springframework.batch.item.file.transform.BeanWrapperFieldExtractor;
+import org.springframework.batch.item.file.transform.DelimitedLineAggregator;
+import org.springframework.core.io.FileSystemResource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+public class OrderStatisticsMergeTaskletTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void merged_file_is_identical_to_single_writer_output() throws Exception {
+        YearMonth yearMonth = YearMonth.of(2020, 11);
+        List<OrderStatistics> items = new ArrayList<>();
+        for (int day = 1; day <= 30; day += 3) {
+            items.add(OrderStatistics.builder().amount(day * 1000L).date(yearMonth.atDay(day)).build());
+        }
+
+        Path expected = directory.resolve("expected.csv");
+        write(expected, items, true);
+
+        Path partDirectory = directory.resolve("parts");
+        for (LocalDate[] range : OrderStatisticsPartitioner.ranges(yearMonth, OrderStatisticsPartitioner.Granularity.WEEK)) {
+            List<OrderStatistics> partItems = items.stream()
+                    .filter(item -> !item.getDate().isBefore(range[0]) && !item.getDate().isAfter(range[1]))
+                    .toList();
+            write(OrderStatisticsPartitioner.partFile(partDirectory, range[0]), partItems, false);
+        }
+
+        Path outputDirectory = directory.resolve("output");
+        new OrderStatisticsMergeTasklet(yearMonth, yearMonth, OrderStatisticsPartitioner.Granularity.WEEK, partDirectory, outputDirectory)
+                .execute(new StepContribution(new StepExecution("mergeStep", new JobExecution(1L))), null);
+
+        Assertions.assertThat(Files.readAllBytes(outputDirectory.resolve("2020년11월_일별_주문_금액.csv")))
+                .isEqualTo(Files.readAllBytes(expected));
+        Assertions.assertThat(partDirectory).doesNotExist();
+    }
+
+    private void write(Path file, List<OrderStatistics> items, boolean header) throws Exception {
+        BeanWrapperFieldExtractor<OrderStatistics> fieldExtractor = new BeanWrapperFieldExtractor<>();
+        fieldExtractor.setNames(new String[] {"amount", "date"});
+
+        DelimitedLineAggregator<OrderStatistics> lineAggregator = new DelimitedLineAggregator<>();
+        lineAggregator.setDelimiter(",");
+        lineAggregator.setFieldExtractor(fieldExtractor);
+
+        FlatFileItemWriterBuilder<OrderStatistics> builder = new FlatFileItemWriterBuilder<OrderStatistics>()
+                .resource(new FileSystemResource(file))
+                .lineAggregator(lineAggregator)
+                .name("orderStatisticsWriter")
+                .encoding("UTF-8")
+                .transactional(false);
+        if (header) {
+            builder.headerCallback(writer -> writer.write("total_amount, date"));
+        }
+
+        Files.createDirectories(file.getParent());
+        FlatFileItemWriter<OrderStatistics> itemWriter = builder.build();
+        itemWriter.open(new ExecutionContext());
+        itemWriter.write(new Chunk<>(items));
+        itemWriter.close();
+    }
+}
@@ -0,0 +1,39 @@
+package com.spring.batch.springbatchexample.part6;
+
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class PartitionSizingTest {
+
+    @Test
+    void ci_box_is_limited_by_cores() {
+        PartitionSizing sizing = PartitionSizing.of(4, 10, 400_000, 1000, null, null);
+
+        Assertions.assertThat(sizing.getConcurrency()).isEqualTo(4);
+        Assertions.assertThat(sizing.getGridSize()).isEqualTo(8);
+    }
+
+    @Test
+    void batch_host_is_limited_by_connection_pool() {
+        PartitionSizing sizing = PartitionSizing.of(32, 10, 400_000, 1000, null, null);
+
+        Assertions.assertThat(sizing.getConcurrency()).isEqualTo(4);
+        Assertions.assertThat(sizing.getGridSize()).isEqualTo(8);
+    }
+
+    @Test
+    void small_table_does_not_split_below_one_chunk() {
+        PartitionSizing sizing = PartitionSizing.of(32, 100, 2500, 1000, null, null);
+
+        Assertions.assertThat(sizing.getGridSize()).isEqualTo(3);
+        Assertions.assertThat(sizing.getConcurrency()).isEqualTo(3);
+    }
+
+    @Test
+    void job_parameters_override() {
+        PartitionSizing sizing = PartitionSizing.of(4, 10, 400_000, 1000, 16, 6);
+
+        Assertions.assertThat(sizing.getGridSize()).isEqualTo(16);
+        Assertions.assertThat(sizing.getConcurrency()).isEqualTo(6);
+    }
+}
@@ -0,0 +1,169 @@
+package com.spring.batch.springbatchexample.part6;
+
+import com.spring.batch.springbatchexample.part3.CustomItemReader;
+import org.assertj.core.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.batch.core.JobExecution;
+import org.springframework.batch.core.StepContribution;
+import org.springframework.batch.core.StepExecution;
+import org.springframework.batch.item.ExecutionContext;
+import org.springframework.batch.item.ItemProcessor;
+import org.springframework.batch.item.ItemWriter;
+import org.springframework.batch.repeat.RepeatStatus;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+class PipelinedChunkTaskletTest {
+    private static final List<Integer> ITEMS = IntStream.range(0, 10).boxed().toList();
+    private static final ItemProcessor<Integer, Integer> EVEN_ONLY = item -> item % 2 == 0 ? item : null;
+
+    private final StepExecution stepExecution = new StepExecution("pipelinedStep", new JobExecution(1L));
+    private final List<Integer> written = new ArrayList<>();
+    private final ItemWriter<Integer> writer = chunk -> written.addAll(chunk.getItems());
+
+    @Test
+    void processes_and_writes_every_chunk() throws Exception {
+        PipelinedChunkTasklet<Integer, Integer> tasklet = tasklet(new CustomItemReader<>(ITEMS), writer, new SimpleAsyncTaskExecutor());
+        ExecutionContext executionContext = new ExecutionContext();
+        tasklet.open(executionContext);
+
+        RepeatStatus status;
+        do {
+            StepContribution contribution = stepExecution.createStepContribution();
+            status = tasklet.execute(contribution, null);
+            tasklet.update(executionContext);
+            stepExecution.apply(contribution);
+        } while (status.isContinuable());
+        tasklet.close();
+
+        Assertions.assertThat(written).containsExactly(0, 2, 4, 6, 8);
+        Assertions.assertThat(stepExecution.getReadCount()).isEqualTo(10);
+        Assertions.assertThat(stepExecution.getFilterCount()).isEqualTo(5);
+        Assertions.assertThat(stepExecution.getWriteCount()).isEqualTo(5);
+    }
+
+    @Test
+    void processes_on_its_own_thread_outside_the_step_thread() throws Exception {
+        Set<Thread> processThreads = ConcurrentHashMap.newKeySet();
+        ItemProcessor<Integer, Integer> recordingProcessor = item -> {
+            processThreads.add(Thread.currentThread());
+            return EVEN_ONLY.process(item);
+        };
+        PipelinedChunkTasklet<Integer, Integer> tasklet = new PipelinedChunkTasklet<>(new CustomItemReader<>(ITEMS), recordingProcessor,
+                writer, new SimpleAsyncTaskExecutor(), 3, 1);
+        tasklet.open(new ExecutionContext());
+        while (tasklet.execute(stepExecution.createStepContribution(), null).isContinuable()) {
+        }
+        tasklet.close();
+
+        Assertions.assertThat(written).containsExactly(0, 2, 4, 6, 8);
+        Assertions.assertThat(processThreads).hasSize(1).doesNotContain(Thread.currentThread());
+    }
+
+    @Test
+    void processor_failure_fails_the_step_after_earlier_chunks() throws Exception {
+        ItemProcessor<Integer, Integer> failingProcessor = item -> {
+            if (item == 4) {
+                throw new IllegalStateException("process failed");
+            }
+            return EVEN_ONLY.process(item);
+        };
+        PipelinedChunkTasklet<Integer, Integer> tasklet = new PipelinedChunkTasklet<>(new CustomItemReader<>(ITEMS), failingProcessor,
+                writer, new SimpleAsyncTaskExecutor(), 3, 1);
+        tasklet.open(new ExecutionContext());
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            tasklet.execute(stepExecution.createStepContribution(), null);
+            Assertions.assertThatThrownBy(() -> tasklet.execute(stepExecution.createStepContribution(), null))
+                    .hasMessage("process failed");
+        });
+        tasklet.close();
+
+        Assertions.assertThat(written).containsExactly(0, 2);
+    }
+
+    @Test
+    void restarts_after_last_written_chunk() throws Exception {
+        // 세 번째 chunk(6, 7, 8)를 쓰다 실패한다. 그 사이 reader 는 이미 다음 chunk 를 읽었다.
+        ItemWriter<Integer> failingWriter = chunk -> {
+            if (chunk.getItems().contains(6)) {
+                throw new IllegalStateException("write failed");
+            }
+            written.addAll(chunk.getItems());
+        };
+        PipelinedChunkTasklet<Integer, Integer> tasklet = tasklet(new CustomItemReader<>(ITEMS), failingWriter, new SimpleAsyncTaskExecutor());
+        ExecutionContext executionContext = new ExecutionContext();
+        tasklet.open(executionContext);
+        tasklet.execute(stepExecution.createStepContribution(), null);
+        tasklet.update(executionContext);
+        tasklet.execute(stepExecution.createStepContribution(), null);
+        tasklet.update(executionContext);
+        Assertions.assertThatThrownBy(() -> tasklet.execute(stepExecution.createStepContribution(), null))
+                .hasMessage("write failed");
+        tasklet.close();
+
+        PipelinedChunkTasklet<Integer, Integer> restarted = tasklet(new CustomItemReader<>(ITEMS), writer, new SimpleAsyncTaskExecutor());
+        restarted.open(executionContext);
+        while (restarted.execute(stepExecution.createStepContribution(), null).isContinuable()) {
+        }
+        restarted.close();
+
+        Assertions.assertThat(written).containsExactly(0, 2, 4, 6, 8);
+    }
+
+    @Test
+    void read_failure_fails_the_step_after_earlier_chunks() throws Exception {
+        CustomItemReader<Integer> failingReader = new CustomItemReader<>(ITEMS) {
+            private int count;
+
+            @Override
+            public Integer read() throws Exception {
+                if (count++ == 4) {
+                    throw new IllegalStateException("read failed");
+                }
+                return super.read();
+            }
+        };
+        PipelinedChunkTasklet<Integer, Integer> tasklet = tasklet(failingReader, writer, new SimpleAsyncTaskExecutor());
+        tasklet.open(new ExecutionContext());
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            tasklet.execute(stepExecution.createStepContribution(), null);
+            Assertions.assertThatThrownBy(() -> tasklet.execute(stepExecution.createStepContribution(), null))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasRootCauseMessage("read failed");
+        });
+        tasklet.close();
+
+        Assertions.assertThat(written).containsExactly(0, 2);
+    }
+
+    @Test
+    void fails_instead_of_waiting_when_read_stage_runs_on_step_thread() {
+        // 가득 찬 pool 의 caller-runs 처럼 제출한 thread 에서 바로 실행하는 executor.
+        TaskExecutor callerRuns = Runnable::run;
+        PipelinedChunkTasklet<Integer, Integer> tasklet = tasklet(new CustomItemReader<>(ITEMS), writer, callerRuns);
+        tasklet.open(new ExecutionContext());
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () ->
+                Assertions.assertThatThrownBy(() -> tasklet.execute(stepExecution.createStepContribution(), null))
+                        .isInstanceOf(IllegalStateException.class)
+                        .hasRootCauseMessage("No thread available for the read stage"));
+        tasklet.close();
+
+        Assertions.assertThat(written).isEmpty();
+    }
+
+    private PipelinedChunkTasklet<Integer, Integer> tasklet(CustomItemReader<Integer> itemReader, ItemWriter<Integer> itemWriter, TaskExecutor taskExecutor) {
+        return new PipelinedChunkTasklet<>(itemReader, EVEN_ONLY, itemWriter, taskExecutor, 3, 1);
+    }
+}